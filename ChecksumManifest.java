@@ -0,0 +1,313 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Checksum manifests, so a tree can be verified against a stored (and separately signed) baseline
+// instead of a second copy. Two forms:
+//   text   - sha256sum format, "<hex>  <path>" per line with '/' separators and GNU escaping of
+//            '\' and line breaks, readable by sha256sum -c (or sha512sum, md5sum, ... to match
+//            the algorithm); BSD "SHA256 (path) = <hex>" lines are accepted when checking
+//   binary - a HashIndex file (name ending in .idx): prefix-compressed, with the folder digests
+// Manifests always hold plain whole-file digests, whatever the chunking setting.
+//
+// check() streams the manifest: each entry is stat'ed, queued on an IoScheduler and hashed in
+// parallel, and the results are put back into manifest order before they reach the sink. Only
+// the files listed are read, so files added since the manifest was written are not reported.
+final class ChecksumManifest {
+
+    private final ScanOptions options;
+    private final Hasher hasher;
+    private long badLines;
+    private boolean stoppedEarly;
+
+    ChecksumManifest(ScanOptions options) {
+        this.options = options.copy().chunking(ScanOptions.Chunking.OFF);
+        this.hasher = Hashers.forName(options.getAlgorithm());
+    }
+
+    static boolean isBinary(Path manifest) {
+        return manifest.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".idx");
+    }
+
+    // Writes the index to a file in the form its name asks for.
+    static void write(HashIndex index, Path manifest) throws IOException {
+        if (!index.getTable().chunkSpec().isEmpty()) throw new IllegalArgumentException("Manifests hold plain digests; scan without chunking");
+        if (isBinary(manifest)) {
+            index.save(manifest);
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(manifest)) {
+            write(index, out);
+        }
+    }
+
+    static void write(HashIndex index, OutputStream stream) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+        DigestTable table = index.getTable();
+        StringBuilder line = new StringBuilder(256);
+        for (int row = 0; row < table.size(); row++) {
+            String path = table.path(row).replace(File.separatorChar, '/');
+            boolean escaped = path.indexOf('\\') >= 0 || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0;
+            line.setLength(0);
+            if (escaped) {
+                line.append('\\');
+                path = path.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+            }
+            line.append(table.hex(row)).append("  ").append(path).append('\n');
+            out.append(line);
+        }
+        out.flush();
+    }
+
+    // Lines that were neither GNU nor BSD checksum lines; they are skipped, like sha256sum does.
+    long getBadLines() { return badLines; }
+
+    // Whether the check ended at the failure limit, leaving the rest of the manifest unread.
+    boolean isStoppedEarly() { return stoppedEarly; }
+
+    // Verifies root against the manifest. A null root means the manifest's own folder for text and
+    // the scanned folder recorded in a binary manifest.
+    ComparisonSummary check(Path manifest, File root, ComparisonSink sink) throws Exception {
+        if (isBinary(manifest) || startsWithIndexMagic(manifest)) {
+            HashIndex index = HashIndex.load(manifest, null);
+            if (index == null) throw new IllegalArgumentException("Not a readable hash index: " + manifest);
+            if (!index.getTable().chunkSpec().isEmpty()) throw new IllegalArgumentException(manifest + " holds chunked digests, not a manifest");
+            FolderComparison.requireSameAlgorithm(index.getAlgorithm(), hasher.name());
+            return check(new IndexEntries(index.getTable()), root != null ? root : new File(index.getRoot()), sink);
+        }
+        try (BufferedReader in = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            File base = root != null ? root : manifest.toAbsolutePath().getParent().toFile();
+            TextEntries entries = new TextEntries(in);
+            if (!entries.hasNext() && badLines > 0) {
+                throw new IllegalArgumentException("No " + hasher.name() + " checksum lines in " + manifest + " (see --algorithm)");
+            }
+            return check(entries, base, sink);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ComparisonSummary check(Iterator<Entry> entries, File root, ComparisonSink sink) throws Exception {
+        Results results = new Results(sink);
+        ScanProgress progress = options.getProgress();
+        if (progress != null) progress.phase("Checking " + root.getName());
+        Path base = root.toPath();
+        int window = options.getParallelism() * 64;
+        IoScheduler<Checked> hashing = new IoScheduler<>(options);
+        long submitted = 0;
+        try {
+            while (!stoppedEarly && entries.hasNext()) {
+                Entry e = entries.next();
+                long seq = submitted++;
+                Path file = base.resolve(e.path);
+                BasicFileAttributes attrs = attributes(file);
+                if (attrs == null) {
+                    results.arrived(new Checked(seq, e.path, IntegrityStatus.MISSING));
+                } else {
+                    if (progress != null) progress.addTotals(1, attrs.size());
+                    hashing.submit(file, attrs.size(), () -> new Checked(seq, e.path, verify(file, e.digest)));
+                }
+                for (Future<Checked> done; (done = hashing.poll()) != null; ) results.arrived(land(done));
+                // the hashers run at most a window ahead of the next result due out
+                while (!stoppedEarly && submitted - results.emitted >= window) results.arrived(land(hashing.take()));
+                if (progress != null && (submitted & 1023) == 0) progress.checkCancelled();
+            }
+            while (!stoppedEarly && results.emitted < submitted) results.arrived(land(hashing.take()));
+        } finally {
+            hashing.shutdownNow();
+        }
+        return results.summary;
+    }
+
+    // Puts results back into manifest order and stops at the failure limit.
+    private final class Results {
+        final ComparisonSummary summary = new ComparisonSummary();
+        final ComparisonSink sink;
+        final Map<Long, Checked> waiting = new HashMap<>();
+        final int maxFailures = options.getMaxFailures();
+        long emitted;
+        long failures;
+
+        Results(ComparisonSink sink) { this.sink = sink; }
+
+        void arrived(Checked c) throws IOException {
+            waiting.put(c.seq, c);
+            for (Checked next; !stoppedEarly && (next = waiting.remove(emitted)) != null; emitted++) {
+                summary.add(next.status);
+                if (!options.isChangesOnly() || next.status != IntegrityStatus.SAME) sink.accept(next.path, next.status);
+                if (next.status != IntegrityStatus.SAME && ++failures == maxFailures) stoppedEarly = true;
+            }
+        }
+    }
+
+    private IntegrityStatus verify(Path file, byte[] expected) throws Exception {
+        try {
+            return Arrays.equals(FileHasher.digest(file, hasher.name(), options), expected)
+                    ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED;
+        } catch (IOException e) {
+            return IntegrityStatus.MISSING; // vanished or unreadable since it was listed
+        }
+    }
+
+    private Checked land(Future<Checked> done) throws Exception {
+        try {
+            Checked c = done.get();
+            if (options.getProgress() != null) options.getProgress().fileDone();
+            return c;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.isRegularFile() ? attrs : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean startsWithIndexMagic(Path manifest) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(manifest))) {
+            return in.readInt() == HashIndex.MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        final String path;
+        final byte[] digest;
+
+        Entry(String path, byte[] digest) {
+            this.path = path;
+            this.digest = digest;
+        }
+    }
+
+    private static final class Checked {
+        final long seq;
+        final String path;
+        final IntegrityStatus status;
+
+        Checked(long seq, String path, IntegrityStatus status) {
+            this.seq = seq;
+            this.path = path;
+            this.status = status;
+        }
+    }
+
+    private static final class IndexEntries implements Iterator<Entry> {
+        private final DigestTable table;
+        private int row;
+
+        IndexEntries(DigestTable table) { this.table = table; }
+
+        @Override public boolean hasNext() { return row < table.size(); }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry e = new Entry(table.path(row), table.digest(row));
+            row++;
+            return e;
+        }
+    }
+
+    // Parses lines lazily; a digest of the wrong length for the algorithm counts as a bad line.
+    private final class TextEntries implements Iterator<Entry> {
+        private final BufferedReader in;
+        private Entry next;
+
+        TextEntries(BufferedReader in) { this.in = in; }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                for (String line; next == null && (line = in.readLine()) != null; ) {
+                    if (line.trim().isEmpty()) continue;
+                    next = parse(line);
+                    if (next == null) badLines++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry e = next;
+            next = null;
+            return e;
+        }
+
+        private Entry parse(String line) {
+            boolean escaped = line.startsWith("\\");
+            if (escaped) line = line.substring(1);
+            int hexLength = hasher.digestLength() * 2;
+            String hex, path;
+            if (line.length() > hexLength + 2 && line.charAt(hexLength) == ' '
+                    && (line.charAt(hexLength + 1) == ' ' || line.charAt(hexLength + 1) == '*')) {
+                // GNU: hex, a space, then a space (text mode) or '*' (binary mode), then the path
+                hex = line.substring(0, hexLength);
+                path = line.substring(hexLength + 2);
+            } else {
+                // BSD tag: ALGO (path) = hex
+                int open = line.indexOf(" (");
+                int close = line.lastIndexOf(") = ");
+                if (open <= 0 || close <= open || !sameAlgorithm(line.substring(0, open))) return null;
+                path = line.substring(open + 2, close);
+                hex = line.substring(close + 4);
+            }
+            if (hex.length() != hexLength || path.isEmpty()) return null;
+            if (escaped) path = unescape(path);
+            try {
+                return new Entry(path, Hex.decode(hex));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        // BSD tags drop the dash: SHA256, SHA512, SHA3-256 ...
+        private boolean sameAlgorithm(String tag) {
+            String t = tag.toUpperCase(Locale.ROOT).replace("-", "");
+            return t.equals(hasher.name().toUpperCase(Locale.ROOT).replace("-", ""));
+        }
+    }
+
+    private static String unescape(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length()) {
+                char n = path.charAt(++i);
+                sb.append(n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
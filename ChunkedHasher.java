@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+// Splits one large file into chunks and hashes the chunks in parallel, so a single huge file is
+// spread over all cores instead of holding up one hashing thread for the whole run. Every chunk is
+// read with positional reads on the shared channel.
+//
+// Fixed chunks start at multiples of the chunk size. Content-defined chunks end where a gear
+// rolling hash over the preceding bytes hits a pattern (FastCDC-style), never closer than a quarter
+// of the target size and never further than four times it; the boundaries are found by one
+// sequential pass that reads each chunk into a memory buffer, cuts it there and hands the buffer to
+// the pool to hash, so every byte is read once. A few buffers per file are recycled, which bounds
+// the memory a file takes however many chunks it has, and all files being chunked at once draw their
+// buffers from the run's chunk memory (ScanOptions.getChunkBuffers). A file waits for two buffers,
+// the least it can make progress with, and takes more only while memory is to spare, so files
+// holding buffers never wait on one another.
+//
+// The chunks are hashed on a pool sized from the options of the run: a folder scan opens one with
+// newPool for all of its files and shuts it down when it ends, a single file gets one of its own.
+final class ChunkedHasher {
+
+    private static final long[] GEAR = new long[256];
+    private static final int BUFFERS = 4; // per file, for content-defined chunking
+
+    static {
+        // fixed seed: boundaries have to be the same on every machine and in every run
+        long seed = 0x46495343444331L;
+        for (int i = 0; i < GEAR.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private ChunkedHasher() {}
+
+    static ForkJoinPool newPool(ScanOptions options) {
+        return new ForkJoinPool(Math.max(1, options.getParallelism()));
+    }
+
+    static FileChunks hash(Path file, ScanOptions options) throws Exception {
+        ForkJoinPool workers = newPool(options);
+        try {
+            return hash(file, options, workers);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    static FileChunks hash(Path file, ScanOptions options, ForkJoinPool workers) throws Exception {
+        ScanMetrics metrics = options.getMetrics();
+        long started = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileHasher.report(options, 0);
+            FileChunks chunks = hash(ch, ch.size(), options.getAlgorithm(), options, workers);
+            if (metrics != null) metrics.fileHashed(file, chunks.size(), System.nanoTime() - started);
+            return chunks;
+        }
+    }
+
+    static FileChunks hash(FileChannel ch, long size, String algorithm, ScanOptions options) throws Exception {
+        ForkJoinPool workers = newPool(options);
+        try {
+            return hash(ch, size, algorithm, options, workers);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    static FileChunks hash(FileChannel ch, long size, String algorithm, ScanOptions options, ForkJoinPool workers) throws Exception {
+        Hasher hasher = Hashers.forName(algorithm);
+        List<Future<byte[]>> parts = new ArrayList<>();
+        long[] ends = new long[16];
+        Semaphore memory = options.getChunkBuffers();
+        int reserved = 0; // bytes of memory this file holds
+        try {
+            int n = 0;
+            if (options.getChunking() == ScanOptions.Chunking.CDC) {
+                int target = options.getChunkSize();
+                int capacity = (int) Math.min(target * 4L, size);
+                // a file alone may go over a budget smaller than two buffers, rather than never start
+                int least = (int) Math.min(2L * capacity, options.getChunkMemory());
+                memory.acquire(least);
+                reserved = least;
+                // one buffer being filled, up to BUFFERS - 1 being hashed
+                BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS);
+                int allocated = 1;
+                byte[] buf = new byte[capacity];
+                int filled = 0;
+                for (long start = 0; start < size; ) {
+                    while (filled < capacity && start + filled < size) {
+                        int r = ch.read(ByteBuffer.wrap(buf, filled, capacity - filled), start + filled);
+                        if (r < 0) break; // the file shrank under us; the digests cover what was there
+                        filled += r;
+                        FileHasher.report(options, r);
+                    }
+                    if (filled == 0) break;
+                    int cut = boundary(buf, filled, target);
+                    byte[] next = free.poll();
+                    if (next == null && (allocated < 2 || allocated < BUFFERS && memory.tryAcquire(capacity))) {
+                        if (allocated >= 2) reserved += capacity;
+                        next = new byte[capacity];
+                        allocated++;
+                    } else if (next == null) {
+                        next = free.take();
+                    }
+                    System.arraycopy(buf, cut, next, 0, filled - cut);
+                    if (n == ends.length) ends = Arrays.copyOf(ends, n * 2);
+                    ends[n++] = start + cut;
+                    parts.add(submit(workers, buf, cut, free, hasher, options));
+                    start += cut;
+                    filled -= cut;
+                    buf = next;
+                }
+            } else {
+                long chunk = options.getChunkSize();
+                for (long start = 0; start < size; start += chunk) {
+                    long end = Math.min(size, start + chunk);
+                    if (n == ends.length) ends = Arrays.copyOf(ends, n * 2);
+                    ends[n++] = end;
+                    parts.add(submit(workers, ch, start, end, hasher, options));
+                }
+            }
+            byte[] digests = new byte[n * hasher.digestLength()];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(parts.get(i).get(), 0, digests, i * hasher.digestLength(), hasher.digestLength());
+            }
+            return new FileChunks(Arrays.copyOf(ends, n), digests, hasher.digestLength());
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            for (Future<byte[]> f : parts) f.cancel(false);
+            memory.release(reserved);
+        }
+    }
+
+    private static Future<byte[]> submit(ForkJoinPool workers, FileChannel ch, long start, long end,
+                                         Hasher hasher, ScanOptions options) {
+        return workers.submit(() -> hashRange(ch, start, end, hasher, options));
+    }
+
+    // Hashes the first length bytes of buf, already read and paid for, and hands buf back to free.
+    private static Future<byte[]> submit(ForkJoinPool workers, byte[] buf, int length, BlockingQueue<byte[]> free,
+                                         Hasher hasher, ScanOptions options) {
+        return workers.submit(() -> {
+            try {
+                ScanMetrics metrics = options.getMetrics();
+                long started = System.nanoTime();
+                long cpuStart = metrics != null ? metrics.threadCpuNanos() : -1;
+                Hasher.State state = hasher.newState();
+                state.update(ByteBuffer.wrap(buf, 0, length));
+                byte[] digest = state.digest();
+                if (metrics != null) metrics.hashWork(System.nanoTime() - started, cpuStart);
+                return digest;
+            } finally {
+                free.add(buf);
+            }
+        });
+    }
+
+    private static byte[] hashRange(FileChannel ch, long start, long end, Hasher hasher, ScanOptions options) throws IOException {
+        ScanMetrics metrics = options.getMetrics();
+        long started = System.nanoTime();
+        long cpuStart = metrics != null ? metrics.threadCpuNanos() : -1;
+        Hasher.State state = hasher.newState();
+        ByteBuffer buf = FileHasher.readBuffer(options.getReadBufferSize());
+        for (long pos = start; pos < end; ) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - pos));
+            int n = ch.read(buf, pos);
+            if (n < 0) break; // the file shrank under us; the digest covers what was there
+            buf.flip();
+            state.update(buf);
+            pos += n;
+            FileHasher.report(options, n);
+        }
+        byte[] digest = state.digest();
+        if (metrics != null) metrics.hashWork(System.nanoTime() - started, cpuStart);
+        return digest;
+    }
+
+    // Length of the content-defined chunk at the start of buf, which holds available bytes of it:
+    // everything up to the largest chunk, or up to the end of the file. The first quarter of the
+    // target size is never a candidate, so it is not even rolled over.
+    private static int boundary(byte[] buf, int available, int target) {
+        int min = target / 4;
+        int max = (int) Math.min(available, target * 4L);
+        if (min >= max) return max;
+        long mask = -1L << (64 - Integer.numberOfTrailingZeros(target)); // top log2(target) bits
+        long h = 0;
+        for (int i = min; i < max; i++) {
+            h = (h << 1) + GEAR[buf[i] & 0xFF];
+            if ((h & mask) == 0) return i + 1;
+        }
+        return max;
+    }
+}
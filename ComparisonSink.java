@@ -0,0 +1,11 @@
+import java.io.IOException;
+
+// Receives comparison results one path at a time, in path order.
+interface ComparisonSink {
+    void accept(String path, IntegrityStatus status) throws IOException;
+
+    // A Modified file with chunk digests on both sides also says which byte ranges differ.
+    default void accept(String path, IntegrityStatus status, String ranges) throws IOException {
+        accept(path, status);
+    }
+}
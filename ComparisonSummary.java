@@ -0,0 +1,23 @@
+// Running per-status counts for one comparison.
+final class ComparisonSummary {
+
+    private final int[] counts = new int[IntegrityStatus.values().length];
+
+    void add(IntegrityStatus status) { counts[status.ordinal()]++; }
+
+    void add(IntegrityStatus status, int n) { counts[status.ordinal()] += n; }
+
+    int get(IntegrityStatus status) { return counts[status.ordinal()]; }
+
+    int exitCode() {
+        int code = 0;
+        for (IntegrityStatus s : IntegrityStatus.values()) if (get(s) > 0) code |= s.exitBit;
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Same:%d Modified:%d Missing:%d Extra:%d", get(IntegrityStatus.SAME),
+                get(IntegrityStatus.MODIFIED), get(IntegrityStatus.MISSING), get(IntegrityStatus.EXTRA));
+    }
+}
@@ -0,0 +1,151 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+
+// Table model for comparison results that stays cheap at millions of rows: paths live in a
+// PathTable, statuses in a byte per row, and the visible rows are an int[] view into those.
+// A scan thread appends through accept(); rows become visible when the EDT calls publish().
+final class ComparisonTableModel extends AbstractTableModel implements ComparisonSink {
+
+    private static final IntegrityStatus[] STATUSES = IntegrityStatus.values();
+
+    private final String[] columns;
+
+    // Written by the scan thread, handed over to the EDT in publish()
+    private final Object pendingLock = new Object();
+    private String[] pendingPaths = new String[256];
+    private byte[] pendingStatus = new byte[256];
+    private int pendingCount;
+    private boolean disposed;
+
+    // EDT only
+    private final PathTable paths = new PathTable();
+    private byte[] status = new byte[1024];
+    private final int[] counts = new int[STATUSES.length];
+    private final boolean[] shown = new boolean[STATUSES.length];
+    private int[] view = new int[1024];
+    private int viewSize;
+    private boolean groupedByStatus;
+
+    ComparisonTableModel(String pathColumn) {
+        this.columns = new String[] { pathColumn, "Status" };
+        Arrays.fill(shown, true);
+    }
+
+    @Override
+    public void accept(String path, IntegrityStatus s) {
+        synchronized (pendingLock) {
+            if (disposed) return;
+            if (pendingCount == pendingPaths.length) {
+                pendingPaths = Arrays.copyOf(pendingPaths, pendingCount * 2);
+                pendingStatus = Arrays.copyOf(pendingStatus, pendingCount * 2);
+            }
+            pendingPaths[pendingCount] = path;
+            pendingStatus[pendingCount] = (byte) s.ordinal();
+            pendingCount++;
+        }
+    }
+
+    // Nobody will publish any more (the window is gone): drop what is waiting and whatever still comes in.
+    void dispose() {
+        synchronized (pendingLock) {
+            disposed = true;
+            pendingPaths = new String[0];
+            pendingStatus = new byte[0];
+            pendingCount = 0;
+        }
+    }
+
+    // Moves everything accepted so far into the table; call on the EDT, e.g. from a Swing timer.
+    void publish() {
+        String[] newPaths;
+        byte[] newStatus;
+        int n;
+        synchronized (pendingLock) {
+            if (pendingCount == 0) return;
+            newPaths = pendingPaths;
+            newStatus = pendingStatus;
+            n = pendingCount;
+            pendingPaths = new String[256];
+            pendingStatus = new byte[256];
+            pendingCount = 0;
+        }
+        int firstVisible = viewSize;
+        for (int i = 0; i < n; i++) {
+            int row = paths.add(newPaths[i]);
+            if (row == status.length) status = Arrays.copyOf(status, row * 2);
+            status[row] = newStatus[i];
+            counts[newStatus[i]]++;
+            if (!groupedByStatus && shown[newStatus[i]]) addToView(row);
+        }
+        if (groupedByStatus) {
+            rebuildView();
+            fireTableDataChanged();
+        } else if (viewSize > firstVisible) {
+            fireTableRowsInserted(firstVisible, viewSize - 1);
+        }
+    }
+
+    int size() { return paths.size(); }
+
+    int count(IntegrityStatus s) { return counts[s.ordinal()]; }
+
+    boolean isShown(IntegrityStatus s) { return shown[s.ordinal()]; }
+
+    void setShown(IntegrityStatus s, boolean visible) {
+        if (shown[s.ordinal()] == visible) return;
+        shown[s.ordinal()] = visible;
+        rebuildView();
+        fireTableDataChanged();
+    }
+
+    // Path order is the order rows arrive in; grouping by status is a stable counting sort on top.
+    void groupByStatus(boolean grouped) {
+        if (groupedByStatus == grouped) return;
+        groupedByStatus = grouped;
+        rebuildView();
+        fireTableDataChanged();
+    }
+
+    IntegrityStatus statusAt(int viewRow) { return STATUSES[status[view[viewRow]]]; }
+
+    String pathAt(int viewRow) { return paths.get(view[viewRow]); }
+
+    @Override
+    public int getRowCount() { return viewSize; }
+
+    @Override
+    public int getColumnCount() { return columns.length; }
+
+    @Override
+    public String getColumnName(int column) { return columns[column]; }
+
+    @Override
+    public Class<?> getColumnClass(int column) { return String.class; }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return column == 0 ? pathAt(row) : statusAt(row).label;
+    }
+
+    private void rebuildView() {
+        viewSize = 0;
+        int rows = paths.size();
+        if (!groupedByStatus) {
+            for (int row = 0; row < rows; row++) {
+                if (shown[status[row]]) addToView(row);
+            }
+            return;
+        }
+        for (int s = 0; s < STATUSES.length; s++) {
+            if (!shown[s] || counts[s] == 0) continue;
+            for (int row = 0; row < rows; row++) {
+                if (status[row] == s) addToView(row);
+            }
+        }
+    }
+
+    private void addToView(int row) {
+        if (viewSize == view.length) view = Arrays.copyOf(view, viewSize * 2);
+        view[viewSize++] = row;
+    }
+}
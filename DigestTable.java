@@ -0,0 +1,143 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Columnar scan result: one row per file, in PathOrder. Paths live in a PathTable, digests are
+// packed back to back in a single byte[], and metadata in primitive arrays, so nothing per file is
+// an object. A single thread writes the table: HashEngine's walking thread appends a row per listed
+// file, copies reused digests from the previous index in the same merge-join, and writes fresh ones
+// as the hashing threads hand them back. The few files large enough for chunked hashing also keep
+// their FileChunks, looked up by row.
+final class DigestTable {
+
+    private final PathTable paths = new PathTable();
+    private final String algorithm;
+    private final String chunkSpec;
+    private final int digestLength;
+    private final HashMap<Integer, FileChunks> chunks = new HashMap<>();
+    private byte[] digests;
+    private long[] sizes;
+    private long[] modified;
+    private long[] fileKeys;
+    private int count;
+
+    DigestTable(String algorithm, int digestLength) {
+        this(algorithm, digestLength, "");
+    }
+
+    DigestTable(String algorithm, int digestLength, String chunkSpec) {
+        this.algorithm = algorithm;
+        this.chunkSpec = chunkSpec;
+        this.digestLength = digestLength;
+        this.digests = new byte[64 * digestLength];
+        this.sizes = new long[64];
+        this.modified = new long[64];
+        this.fileKeys = new long[64];
+    }
+
+    int size() { return count; }
+
+    String algorithm() { return algorithm; }
+
+    int digestLength() { return digestLength; }
+
+    // ScanOptions.getChunkSpec() of the scan that produced the digests.
+    String chunkSpec() { return chunkSpec; }
+
+    int add(String relative, long size, long modifiedNanos, long fileKey) {
+        if (count == sizes.length) {
+            int cap = count * 2;
+            digests = Arrays.copyOf(digests, cap * digestLength);
+            sizes = Arrays.copyOf(sizes, cap);
+            modified = Arrays.copyOf(modified, cap);
+            fileKeys = Arrays.copyOf(fileKeys, cap);
+        }
+        paths.add(relative);
+        sizes[count] = size;
+        modified[count] = modifiedNanos;
+        fileKeys[count] = fileKey;
+        return count++;
+    }
+
+    String path(int row) { return paths.get(row); }
+
+    long fileSize(int row) { return sizes[row]; }
+
+    long modified(int row) { return modified[row]; }
+
+    long fileKey(int row) { return fileKeys[row]; }
+
+    void setDigest(int row, byte[] digest) {
+        System.arraycopy(digest, 0, digests, row * digestLength, digestLength);
+    }
+
+    void copyDigest(int row, DigestTable from, int fromRow) {
+        System.arraycopy(from.digests, fromRow * digestLength, digests, row * digestLength, digestLength);
+        FileChunks c = from.chunks(fromRow);
+        if (c != null) setChunks(row, c);
+    }
+
+    synchronized void setChunks(int row, FileChunks c) {
+        chunks.put(row, c);
+    }
+
+    // Chunk digests of the file in this row, or null when it was hashed whole.
+    synchronized FileChunks chunks(int row) {
+        return chunks.isEmpty() ? null : chunks.get(row);
+    }
+
+    synchronized int[] chunkedRows() {
+        int[] rows = new int[chunks.size()];
+        int n = 0;
+        for (Integer row : chunks.keySet()) rows[n++] = row;
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    byte[] digest(int row) {
+        return Arrays.copyOfRange(digests, row * digestLength, (row + 1) * digestLength);
+    }
+
+    String hex(int row) {
+        return Hex.encode(digests, row * digestLength, digestLength);
+    }
+
+    boolean sameDigest(int row, DigestTable other, int otherRow) {
+        if (!algorithm.equals(other.algorithm)) return false;
+        int a = row * digestLength, b = otherRow * other.digestLength;
+        for (int i = 0; i < digestLength; i++) {
+            if (digests[a + i] != other.digests[b + i]) return false;
+        }
+        return true;
+    }
+
+    boolean sameDigest(int row, byte[] digest) {
+        if (digest.length != digestLength) return false;
+        int a = row * digestLength;
+        for (int i = 0; i < digestLength; i++) {
+            if (digests[a + i] != digest[i]) return false;
+        }
+        return true;
+    }
+
+    boolean sameMetadata(int row, DigestTable other, int otherRow) {
+        return sizes[row] == other.sizes[otherRow] && modified[row] == other.modified[otherRow]
+                && fileKeys[row] == other.fileKeys[otherRow];
+    }
+
+    // Row holding exactly this path, or -1. Rows are in PathOrder, so this is a binary search.
+    int find(String relative) {
+        int row = lowerBound(relative);
+        return row < count && paths.get(row).equals(relative) ? row : -1;
+    }
+
+    // First row whose path is not ordered before the given one.
+    int lowerBound(String relative) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (PathOrder.compare(paths.get(mid), relative) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
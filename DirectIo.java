@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Whole-file reads that bypass the page cache (O_DIRECT), so an all-day verification does not evict
+// the working set of services sharing the machine. Needs JDK 10+ (ExtendedOpenOption.DIRECT) and a
+// file system that accepts it; everywhere else open() returns null and the caller reads normally.
+// O_DIRECT wants the buffer address, the file position and the request size to be multiples of the
+// block size, so reads go through a buffer aligned to 64 KiB in whole-buffer steps.
+final class DirectIo {
+
+    private static final int ALIGN = 64 * 1024;
+    private static final OpenOption DIRECT = directOption();
+    private static final Method ALIGNED_SLICE = alignedSlice();
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<>();
+
+    private DirectIo() {}
+
+    static boolean isAvailable() { return DIRECT != null && ALIGNED_SLICE != null; }
+
+    // The file opened with O_DIRECT, or null when direct I/O is not possible for it.
+    static FileChannel open(Path file) {
+        if (!isAvailable()) return null;
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ, DIRECT);
+        } catch (IOException | UnsupportedOperationException e) {
+            return null; // e.g. EINVAL from a file system without O_DIRECT; a plain open reports real errors
+        }
+    }
+
+    // Feeds the file behind ch, opened by open(), to state and returns the bytes read, or -1
+    // (before anything was read) when the file system refuses the aligned reads after all.
+    static long update(FileChannel ch, Hasher.State state, ScanOptions options) throws IOException {
+        ByteBuffer buf = buffer(options.getReadBufferSize());
+        long pos = 0;
+        while (true) {
+            buf.clear();
+            int n;
+            try {
+                n = ch.read(buf, pos);
+            } catch (IOException e) {
+                if (pos == 0) return -1; // block size above our alignment
+                throw e;
+            }
+            if (n <= 0) break;
+            buf.flip();
+            state.update(buf);
+            pos += n;
+            FileHasher.report(options, n);
+            if (n < buf.capacity()) break; // a short read is the end of the file
+        }
+        return pos;
+    }
+
+    private static ByteBuffer buffer(int size) throws IOException {
+        int capacity = Math.max(ALIGN, size / ALIGN * ALIGN);
+        ByteBuffer buf = BUFFER.get();
+        if (buf == null || buf.capacity() != capacity) {
+            try {
+                buf = (ByteBuffer) ALIGNED_SLICE.invoke(ByteBuffer.allocateDirect(capacity + ALIGN), ALIGN);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Cannot align a direct I/O buffer", e);
+            }
+            buf.limit(capacity);
+            buf = buf.slice();
+            BUFFER.set(buf);
+        }
+        return buf;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static OpenOption directOption() {
+        try {
+            return (OpenOption) Enum.valueOf((Class) Class.forName("com.sun.nio.file.ExtendedOpenOption"), "DIRECT");
+        } catch (ClassNotFoundException | IllegalArgumentException | LinkageError e) {
+            return null; // before JDK 10, or not an OpenJDK runtime
+        }
+    }
+
+    private static Method alignedSlice() {
+        try {
+            return ByteBuffer.class.getMethod("alignedSlice", int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
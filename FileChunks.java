@@ -0,0 +1,133 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// Chunk digests of one large file: where each chunk ends and what it hashed to, packed into arrays.
+// In chunked mode the file's own digest is taken over this list, so the chunks can be hashed in
+// parallel and two versions of the file can be compared chunk by chunk.
+final class FileChunks {
+
+    private static final int MAX_RANGES = 20;
+
+    private final long[] ends; // exclusive end offset of each chunk
+    private final byte[] digests;
+    private final int digestLength;
+
+    FileChunks(long[] ends, byte[] digests, int digestLength) {
+        this.ends = ends;
+        this.digests = digests;
+        this.digestLength = digestLength;
+    }
+
+    int count() { return ends.length; }
+
+    long start(int i) { return i == 0 ? 0 : ends[i - 1]; }
+
+    long end(int i) { return ends[i]; }
+
+    long size() { return ends.length == 0 ? 0 : ends[ends.length - 1]; }
+
+    int digestLength() { return digestLength; }
+
+    byte[] digest(int i) {
+        return Arrays.copyOfRange(digests, i * digestLength, (i + 1) * digestLength);
+    }
+
+    // The algorithm applied to every chunk's length and digest, in order.
+    byte[] fileDigest(Hasher hasher) {
+        Hasher.State state = hasher.newState();
+        ByteBuffer entry = ByteBuffer.allocate(8 + digestLength);
+        for (int i = 0; i < ends.length; i++) {
+            entry.clear();
+            entry.putLong(ends[i] - start(i)).put(digests, i * digestLength, digestLength);
+            entry.flip();
+            state.update(entry);
+        }
+        return state.digest();
+    }
+
+    private boolean sameChunk(int i, FileChunks other, int j) {
+        if (ends[i] - start(i) != other.ends[j] - other.start(j)) return false;
+        int a = i * digestLength, b = j * other.digestLength;
+        for (int k = 0; k < digestLength; k++) {
+            if (digests[a + k] != other.digests[b + k]) return false;
+        }
+        return true;
+    }
+
+    // Byte ranges of the newer file (inclusive, like HTTP ranges) whose content the older one lacks.
+    // Fixed chunks are compared position by position. Content-defined chunks are looked up by
+    // digest, so an insert near the start does not flag everything after it. When nothing in the
+    // newer file is new (data was only cut out), the removed ranges of the older file are named.
+    static String differingRanges(FileChunks older, FileChunks newer, boolean contentDefined) {
+        Ranges added = new Ranges();
+        if (contentDefined) {
+            Set<ByteBuffer> known = older.digestSet();
+            for (int i = 0; i < newer.count(); i++) {
+                if (!known.contains(newer.key(i))) added.add(newer.start(i), newer.end(i));
+            }
+        } else {
+            for (int i = 0; i < newer.count(); i++) {
+                if (i >= older.count() || !newer.sameChunk(i, older, i)) added.add(newer.start(i), newer.end(i));
+            }
+        }
+        if (!added.isEmpty()) return "bytes " + added;
+        Ranges removed = new Ranges();
+        if (contentDefined) {
+            Set<ByteBuffer> kept = newer.digestSet();
+            for (int i = 0; i < older.count(); i++) {
+                if (!kept.contains(older.key(i))) removed.add(older.start(i), older.end(i));
+            }
+        } else if (older.size() > newer.size()) {
+            removed.add(newer.size(), older.size());
+        }
+        return !removed.isEmpty() ? "removed bytes " + removed : "chunks reordered";
+    }
+
+    private Set<ByteBuffer> digestSet() {
+        Set<ByteBuffer> set = new HashSet<>(ends.length * 2);
+        for (int i = 0; i < ends.length; i++) set.add(key(i));
+        return set;
+    }
+
+    private ByteBuffer key(int i) {
+        return ByteBuffer.wrap(digests, i * digestLength, digestLength).slice();
+    }
+
+    // Adjacent ranges are merged; only the first few are spelled out.
+    private static final class Ranges {
+        private final StringBuilder text = new StringBuilder();
+        private long from = -1, to;
+        private int count;
+
+        void add(long start, long end) {
+            if (from >= 0 && start == to) {
+                to = end;
+                return;
+            }
+            flush();
+            from = start;
+            to = end;
+        }
+
+        boolean isEmpty() { return count == 0 && from < 0; }
+
+        private void flush() {
+            if (from < 0) return;
+            if (count < MAX_RANGES) {
+                if (count > 0) text.append(", ");
+                text.append(from).append('-').append(to - 1);
+            }
+            count++;
+            from = -1;
+        }
+
+        @Override
+        public String toString() {
+            flush();
+            if (count > MAX_RANGES) text.append(", ... (").append(count).append(" ranges)");
+            return text.toString();
+        }
+    }
+}
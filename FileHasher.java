@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Single-file digest routine shared by the GUI and the folder hashing engine, for any Hasher.
+// Small files are read through a reusable direct buffer; files at or above the mapping threshold
+// are fed to the digest as memory-mapped chunks, so the bytes never pass through the Java heap.
+// With chunking enabled, files above the chunk threshold go to ChunkedHasher instead; with direct
+// I/O on, whole files are read around the page cache by DirectIo, falling back to the above.
+final class FileHasher {
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = new ThreadLocal<>();
+
+    private FileHasher() {}
+
+    static String hash(Path file, String algorithm, ScanOptions options) throws Exception {
+        return Hex.encode(digest(file, algorithm, options));
+    }
+
+    static byte[] digest(Path file, String algorithm, ScanOptions options) throws Exception {
+        Hasher.State digest = Hashers.forName(algorithm).newState();
+        ScanMetrics metrics = options.getMetrics();
+        long started = metrics != null ? System.nanoTime() : 0;
+        FileChannel ch = options.isDirectIo() ? DirectIo.open(file) : null;
+        boolean direct = ch != null;
+        if (!direct) ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            report(options, 0); // the open is one request against the I/O budget
+            long size = ch.size();
+            if (options.isChunked(size)) {
+                if (direct) {
+                    // chunks are read in parallel at any offset, which O_DIRECT does not allow
+                    ch.close();
+                    ch = FileChannel.open(file, StandardOpenOption.READ);
+                    report(options, 0);
+                }
+                FileChunks chunks = ChunkedHasher.hash(ch, size, algorithm, options);
+                if (metrics != null) metrics.fileHashed(file, chunks.size(), System.nanoTime() - started);
+                return chunks.fileDigest(Hashers.forName(algorithm));
+            }
+            long cpuStart = metrics != null ? metrics.threadCpuNanos() : -1;
+            long read = direct ? DirectIo.update(ch, digest, options) : -1;
+            if (direct && read < 0) {
+                ch.close();
+                ch = FileChannel.open(file, StandardOpenOption.READ);
+                report(options, 0);
+            }
+            long threshold = options.getMmapThreshold();
+            if (read >= 0) {
+                // read around the page cache; nothing left to do
+            } else if (threshold > 0 && size >= threshold) {
+                long chunk = options.getMmapChunkSize();
+                int slice = options.getReadBufferSize();
+                for (long pos = 0; pos < size; pos += chunk) {
+                    MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(chunk, size - pos));
+                    // feed the mapping a buffer's worth at a time so progress and cancel stay responsive
+                    for (int at = 0; at < mapped.capacity(); at += slice) {
+                        int end = Math.min(mapped.capacity(), at + slice);
+                        mapped.limit(end).position(at);
+                        digest.update(mapped);
+                        report(options, end - at);
+                    }
+                }
+                ch.position(size); // pick up anything appended while we were mapping
+            }
+            if (read < 0) {
+                updateFromChannel(digest, ch, readBuffer(options.getReadBufferSize()), options);
+                read = ch.position();
+            }
+            byte[] result = digest.digest();
+            if (metrics != null) {
+                // page faults of mapped reads are waited for inside update(), so they count as I/O wait too
+                long wall = System.nanoTime() - started;
+                metrics.hashWork(wall, cpuStart);
+                metrics.fileHashed(file, read, wall);
+            }
+            return result;
+        } finally {
+            ch.close();
+        }
+    }
+
+    private static void updateFromChannel(Hasher.State digest, FileChannel ch, ByteBuffer buf, ScanOptions options) throws IOException {
+        buf.clear();
+        int n;
+        while ((n = ch.read(buf)) != -1) {
+            buf.flip();
+            digest.update(buf);
+            buf.clear();
+            report(options, n);
+        }
+    }
+
+    // Called once per read request: counts progress, pays the I/O budget and checks for cancel.
+    static void report(ScanOptions options, long bytes) throws InterruptedIOException {
+        IoThrottle throttle = options.getThrottle();
+        if (throttle != null) {
+            long slept = throttle.paid(bytes);
+            if (slept > 0 && options.getMetrics() != null) options.getMetrics().throttled(slept);
+        }
+        ScanProgress progress = options.getProgress();
+        if (progress == null) return;
+        progress.bytesRead(bytes);
+        progress.checkCancelled();
+    }
+
+    // Direct buffers are expensive to allocate, so each hashing thread keeps one around.
+    static ByteBuffer readBuffer(int size) {
+        ByteBuffer buf = READ_BUFFER.get();
+        if (buf == null || buf.capacity() != size) {
+            buf = ByteBuffer.allocateDirect(size);
+            READ_BUFFER.set(buf);
+        }
+        return buf;
+    }
+}
@@ -1,27 +1,45 @@
 
 import javax.swing.*;
+import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.awt.datatransfer.StringSelection;
 import java.awt.event.*;
 import java.io.*;
-import java.security.MessageDigest;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 
 public class FileIntegritySystem extends JFrame {
 
-    private static final String HISTORY_FILE = "history.txt";
+    private static final String HISTORY_FILE = "history.txt"; // legacy format, migrated on first use
+    private static final String HISTORY_DIR = System.getProperty("fis.historyDir", ".fis-history");
+    private static final int HISTORY_PAGE_SIZE = 200;
 
     private JTextField path1Field, path2Field;
     private JTextArea hash1Area, hash2Area;
     private JLabel modeLabel;
     private boolean isFolderMode = false; // false = File mode, true = Folder mode
+    private final ScanOptions scanOptions = new ScanOptions();
+    private final ScanCache scanCache = new ScanCache();
+    private HistoryStore historyStore;
+
+    // Background scan state; all of it is only touched on the EDT
+    private JLabel info;
+    private JProgressBar progressBar;
+    private JButton cancelBtn;
+    private final List<JButton> scanButtons = new ArrayList<>();
+    private ScanTask<?> currentTask;
+    private ScanMetrics lastMetrics; // of the latest scan, shown by the Metrics button
+
 
     public FileIntegritySystem() {
         setTitle("File Integrity System");
@@ -164,20 +182,76 @@ public class FileIntegritySystem extends JFrame {
         JButton checkBtn = createColorButton("Check Integrity", new Color(255, 140, 0));
         JButton clearBtn = createColorButton("Clear", new Color(120, 120, 120));
         JButton viewHistoryBtn = createColorButton("View History", new Color(100, 149, 237));
+        JButton watchBtn = createColorButton("Watch Folder", new Color(128, 0, 128));
+        JButton reportBtn = createColorButton("Export Report", new Color(34, 139, 34));
+        JButton manifestBtn = createColorButton("Manifest", new Color(184, 134, 11));
+        JButton metricsBtn = createColorButton("Metrics", new Color(70, 130, 180));
 
         leftButtons.add(toggleBtn);
         leftButtons.add(generateBtn);
         leftButtons.add(checkBtn);
         leftButtons.add(clearBtn);
         leftButtons.add(viewHistoryBtn);
-
+        leftButtons.add(watchBtn);
+        leftButtons.add(reportBtn);
+        leftButtons.add(manifestBtn);
+        leftButtons.add(metricsBtn);
+
+        // Scan options row above the buttons
+        JPanel optionsRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 0));
+        optionsRow.setOpaque(false);
+
+        JLabel algorithmLabel = new JLabel("Algorithm:");
+        algorithmLabel.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        JComboBox<String> algorithmBox = new JComboBox<>(Hashers.available().toArray(new String[0]));
+        algorithmBox.setSelectedItem(scanOptions.getAlgorithm());
+        algorithmBox.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        algorithmBox.setToolTipText("XXH64 / CRC32 / CRC32C are fast change detectors, not tamper-proof");
+        algorithmBox.addActionListener(e -> {
+            scanOptions.algorithm((String) algorithmBox.getSelectedItem());
+            String warning = Hashers.tamperWarning(scanOptions.getAlgorithm());
+            info.setText(warning != null ? warning : "Algorithm: " + scanOptions.getAlgorithm());
+        });
+        optionsRow.add(algorithmLabel);
+        optionsRow.add(algorithmBox);
+
+        optionsRow.add(createOptionBox("Force full rehash", scanOptions.isForceRehash(), null,
+                selected -> scanOptions.forceRehash(selected)));
+        optionsRow.add(createOptionBox("Low-memory streaming", scanOptions.isStreaming(), null,
+                selected -> scanOptions.streaming(selected)));
+        optionsRow.add(createOptionBox("Fast compare", scanOptions.isFastCompare(),
+                "Compare sizes and head/tail samples before hashing whole files",
+                selected -> scanOptions.fastCompare(selected)));
+
+        bottom.add(optionsRow, BorderLayout.NORTH);
         bottom.add(leftButtons, BorderLayout.WEST);
 
-        // Result status label on right
-        JLabel info = new JLabel("Ready");
+        // Result status label on right, with progress and cancel while a scan runs
+        info = new JLabel("Ready");
         info.setFont(new Font("Segoe UI", Font.BOLD, 14));
         info.setForeground(new Color(20, 20, 80));
-        bottom.add(info, BorderLayout.EAST);
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setPreferredSize(new Dimension(160, 18));
+        progressBar.setVisible(false);
+        cancelBtn = createColorButton("Cancel", new Color(220, 20, 60));
+        cancelBtn.setVisible(false);
+        cancelBtn.addActionListener(e -> {
+            if (currentTask != null) {
+                currentTask.cancelScan();
+                info.setText("Cancelling...");
+            }
+        });
+        JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 8));
+        statusPanel.setOpaque(false);
+        statusPanel.add(info);
+        statusPanel.add(progressBar);
+        statusPanel.add(cancelBtn);
+        bottom.add(statusPanel, BorderLayout.EAST);
+        scanButtons.add(generateBtn);
+        scanButtons.add(checkBtn);
+        scanButtons.add(watchBtn);
+        scanButtons.add(reportBtn);
+        scanButtons.add(manifestBtn);
 
         // Actions
         toggleBtn.addActionListener(e -> {
@@ -187,34 +261,31 @@ public class FileIntegritySystem extends JFrame {
         });
 
         generateBtn.addActionListener(e -> {
-            try {
-                if (isFolderMode) {
-                    if (!validatePaths(true)) return;
-                    hash1Area.setText(generateFolderSummary(new File(path1Field.getText())));
-                    hash2Area.setText(generateFolderSummary(new File(path2Field.getText())));
-                    info.setText("Hashes generated for folders");
-                } else {
-                    if (!validatePaths(false)) return;
-                    if (!path1Field.getText().isEmpty()) hash1Area.setText(getFileHash(path1Field.getText(), "SHA-256"));
-                    if (!path2Field.getText().isEmpty()) hash2Area.setText(getFileHash(path2Field.getText(), "SHA-256"));
-                    info.setText("Hashes generated for files");
-                }
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error generating hashes: " + ex.getMessage());
-            }
+            if (!validatePaths(isFolderMode)) return;
+            File f1 = new File(path1Field.getText());
+            File f2 = new File(path2Field.getText());
+            String what = isFolderMode ? "folders" : "files";
+            runInBackground("generating hashes", (options, progress) -> {
+                if (!f1.isDirectory()) progress.addTotals(2, f1.length() + f2.length());
+                String s1 = f1.isDirectory() ? generateFolderSummary(f1, options) : getFileHash(f1, options);
+                if (!f1.isDirectory()) progress.fileDone();
+                String s2 = f2.isDirectory() ? generateFolderSummary(f2, options) : getFileHash(f2, options);
+                if (!f2.isDirectory()) progress.fileDone();
+                return new String[] { s1, s2 };
+            }, summaries -> {
+                hash1Area.setText(summaries[0]);
+                hash2Area.setText(summaries[1]);
+                info.setText("Hashes generated for " + what);
+            });
         });
 
         checkBtn.addActionListener(e -> {
-            try {
-                if (isFolderMode) {
-                    if (!validatePaths(true)) return;
-                    showFolderComparison();
-                } else {
-                    if (!validatePaths(false)) return;
-                    showFileComparison();
-                }
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error checking integrity: " + ex.getMessage());
+            if (isFolderMode) {
+                if (!validatePaths(true)) return;
+                showFolderComparison();
+            } else {
+                if (!validatePaths(false)) return;
+                showFileComparison();
             }
         });
 
@@ -228,9 +299,81 @@ public class FileIntegritySystem extends JFrame {
 
         viewHistoryBtn.addActionListener(e -> showHistoryDialog());
 
+        reportBtn.setToolTipText("Compare Path 1 and Path 2 straight into a CSV, JSON Lines or HTML file");
+        reportBtn.addActionListener(e -> exportReport());
+
+        manifestBtn.setToolTipText("Write a sha256sum-style manifest of Path 1, or check Path 1 against one");
+        manifestBtn.addActionListener(e -> manifestAction());
+
+        metricsBtn.setToolTipText("Stage timings, throughput and slowest files of the last scan");
+        metricsBtn.addActionListener(e -> showMetricsDialog());
+
+        watchBtn.addActionListener(e -> {
+            File folder = new File(path1Field.getText().trim());
+            if (!folder.isDirectory()) {
+                JOptionPane.showMessageDialog(this, "Please select a valid folder in Path 1.");
+                return;
+            }
+            // The baseline scan can take a while, so it runs like any other scan
+            runInBackground("starting watch", (options, progress) -> scanCache.scanFolder(folder, new HashEngine(options)).getTable(),
+                    baseline -> {
+                        try {
+                            showWatchDialog(folder, baseline);
+                        } catch (IOException ex) {
+                            JOptionPane.showMessageDialog(this, "Error starting watch: " + ex.getMessage());
+                        }
+                    });
+        });
+
         return bottom;
     }
 
+    private interface ScanJob<T> {
+        T run(ScanOptions options, ScanProgress progress) throws Exception;
+    }
+
+    // Hashing never runs on the EDT: the job gets a snapshot of the options wired to a fresh
+    // ScanProgress, and onSuccess is called back on the EDT with its result.
+    private <T> void runInBackground(String action, ScanJob<T> job, Consumer<T> onSuccess) {
+        if (currentTask != null) return;
+        ScanProgress progress = new ScanProgress();
+        ScanMetrics metrics = new ScanMetrics();
+        ScanOptions options = scanOptions.copy().progress(progress).metrics(metrics);
+        lastMetrics = metrics;
+        metrics.publish();
+        setScanning(true);
+        ScanTask<T> task = new ScanTask<>(progress, p -> job.run(options, p), info, progressBar,
+                result -> {
+                    metrics.finish();
+                    onSuccess.accept(result);
+                    info.setToolTipText(metrics.brief());
+                    warnSampleMismatches(progress.getWarnings());
+                },
+                ex -> {
+                    metrics.finish();
+                    info.setText("Failed");
+                    JOptionPane.showMessageDialog(this, "Error " + action + ": " + ex.getMessage());
+                },
+                () -> setScanning(false));
+        currentTask = task;
+        task.start();
+    }
+
+    private void setScanning(boolean scanning) {
+        if (!scanning) currentTask = null;
+        for (JButton b : scanButtons) b.setEnabled(!scanning);
+        cancelBtn.setVisible(scanning);
+    }
+
+    private JCheckBox createOptionBox(String text, boolean selected, String tooltip, Consumer<Boolean> onChange) {
+        JCheckBox box = new JCheckBox(text, selected);
+        box.setOpaque(false);
+        box.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        box.setToolTipText(tooltip);
+        box.addActionListener(e -> onChange.accept(box.isSelected()));
+        return box;
+    }
+
     private JButton createColorButton(String text, Color color) {
         JButton btn = new JButton(text);
         btn.setBackground(color);
@@ -267,220 +410,442 @@ public class FileIntegritySystem extends JFrame {
         return true;
     }
 
-    private String getFileHash(String filePath, String algorithm) throws Exception {
-        MessageDigest digest = MessageDigest.getInstance(algorithm);
-        try (FileInputStream fis = new FileInputStream(filePath)) {
-            byte[] byteArray = new byte[4 * 1024];
-            int bytesCount;
-            while ((bytesCount = fis.read(byteArray)) != -1) {
-                digest.update(byteArray, 0, bytesCount);
-            }
-        }
-        byte[] bytes = digest.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) sb.append(String.format("%02x", b));
-        return sb.toString();
+    private String getFileHash(File file, ScanOptions options) throws Exception {
+        return scanCache.fileDigest(file, options.getAlgorithm(), options);
     }
 
-    private String generateFolderSummary(File folder) throws Exception {
+    private String generateFolderSummary(File folder, ScanOptions options) throws Exception {
         StringBuilder sb = new StringBuilder();
-        Map<String, String> map = new HashMap<>();
-        collectHashes(folder, map, folder.getAbsolutePath().length(), sb);
+        if (options.isStreaming()) {
+            new StreamingScan(options).hashTree(folder,
+                    (rel, record) -> sb.append(rel).append(" : ").append(Hex.encode(record.digest)).append("\n"));
+            return sb.toString();
+        }
+        HashIndex index = collectHashes(folder, options);
+        DigestTable table = index.getTable();
+        for (int row = 0; row < table.size(); row++) {
+            sb.append(table.path(row)).append(" : ").append(table.hex(row)).append("\n");
+        }
+        sb.append("Root digest : ").append(index.getRootDigest()).append("\n");
         return sb.toString();
     }
 
-    private void collectHashes(File folder, Map<String, String> map, int baseLen, StringBuilder sb) throws Exception {
-        File[] files = folder.listFiles();
-        if (files == null) return;
-        for (File f : files) {
-            if (f.isFile()) {
-                String relative = f.getAbsolutePath().substring(baseLen);
-                if (relative.startsWith(File.separator)) relative = relative.substring(1);
-                String hash = getFileHash(f.getAbsolutePath(), "SHA-256");
-                map.put(relative, hash);
-                sb.append(relative).append(" : ").append(hash).append("\n");
-            } else if (f.isDirectory()) {
-                collectHashes(f, map, baseLen, sb);
-            }
-        }
+    private HashIndex collectHashes(File folder, ScanOptions options) throws Exception {
+        // Files are hashed in parallel and the result is path-sorted, so output stays stable.
+        // The session cache means a check right after "Generate Hashes" only rehashes changed files.
+        HashEngine engine = new HashEngine(options);
+        HashIndex index = scanCache.scanFolder(folder, engine);
+        for (String rel : engine.getSampleMismatches()) options.getProgress().warn(new File(folder, rel).getPath());
+        return index;
     }
 
-    private void collectHashes(File folder, Map<String, String> map, int baseLen) throws Exception {
-        collectHashes(folder, map, baseLen, new StringBuilder());
+    private void warnSampleMismatches(List<String> mismatches) {
+        if (mismatches.isEmpty()) return;
+        StringBuilder msg = new StringBuilder("Content changed without a metadata change:\n");
+        for (int i = 0; i < Math.min(10, mismatches.size()); i++) msg.append("  ").append(mismatches.get(i)).append("\n");
+        if (mismatches.size() > 10) msg.append("  ... and ").append(mismatches.size() - 10).append(" more");
+        JOptionPane.showMessageDialog(this, msg.toString(), "Verify Sample", JOptionPane.WARNING_MESSAGE);
     }
 
     private void showFileComparison() {
-        try {
-            String h1 = hash1Area.getText().trim();
-            String h2 = hash2Area.getText().trim();
-            if (h1.isEmpty() || h2.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "Please generate hashes first for both files.");
-                return;
-            }
-            String status = h1.equals(h2) ? "Same" : "Modified";
-            Object[] row = { new File(path1Field.getText()).getName(), status };
-            showResultTable(new String[][]{ { (String)row[0], (String)row[1] } }, new String[] { "File", "Status" } );
-            saveHistoryRecord("File", path1Field.getText(), path2Field.getText(), status);
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error comparing files: " + ex.getMessage());
-        }
+        String p1 = path1Field.getText();
+        String p2 = path2Field.getText();
+        String algorithm = scanOptions.getAlgorithm();
+        runInBackground("comparing files", (options, progress) -> {
+            // Re-validate against the files on disk rather than trusting the text areas
+            File f1 = new File(p1), f2 = new File(p2);
+            progress.addTotals(2, f1.length() + f2.length());
+            String h1 = getFileHash(f1, options);
+            progress.fileDone();
+            String h2 = getFileHash(f2, options);
+            progress.fileDone();
+            return new String[] { h1, h2 };
+        }, hashes -> {
+            hash1Area.setText(hashes[0]);
+            hash2Area.setText(hashes[1]);
+            IntegrityStatus status = hashes[0].equals(hashes[1]) ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED;
+            info.setText("Files: " + status.label);
+            saveHistoryRecord("File", p1, p2, status.label + " (" + algorithm + ")");
+            ComparisonTableModel model = new ComparisonTableModel("File");
+            model.accept(new File(p1).getName(), status);
+            model.publish();
+            showResultTable(model);
+        });
     }
 
     private void showFolderComparison() {
-        try {
-            File folder1 = new File(path1Field.getText());
-            File folder2 = new File(path2Field.getText());
-
-            Map<String, String> map1 = new HashMap<>();
-            Map<String, String> map2 = new HashMap<>();
-            collectHashes(folder1, map1, folder1.getAbsolutePath().length());
-            collectHashes(folder2, map2, folder2.getAbsolutePath().length());
-
-            List<String[]> rows = new ArrayList<>();
-            int same = 0, modified = 0, missing = 0, extra = 0;
-
-            for (String rel : map1.keySet()) {
-                if (!map2.containsKey(rel)) {
-                    rows.add(new String[]{rel, "Missing"});
-                    missing++;
-                } else if (map1.get(rel).equals(map2.get(rel))) {
-                    rows.add(new String[]{rel, "Same"});
-                    same++;
+        String p1 = path1Field.getText();
+        String p2 = path2Field.getText();
+        String algorithm = scanOptions.getAlgorithm();
+        ComparisonTableModel model = new ComparisonTableModel("File Path");
+        runInBackground("comparing folders", (options, progress) -> compareFolders(new File(p1), new File(p2), options, model),
+                summary -> {
+                    model.publish();
+                    info.setText(summary.toString());
+                    saveHistoryRecord("Folder", p1, p2, summary + " (" + algorithm + ")");
+                });
+        if (currentTask != null) showResultTable(model);
+    }
+
+    private ComparisonSummary compareFolders(File folder1, File folder2, ScanOptions options, ComparisonSink sink) throws Exception {
+        if (options.isStreaming() || options.isFastCompare()) {
+            // fast compare works pair by pair, so it always runs through the streaming merge
+            return new StreamingScan(options).compare(folder1, folder2, sink);
+        }
+        // identical subfolders are skipped by their Merkle digests
+        HashIndex index1 = collectHashes(folder1, options);
+        HashIndex index2 = collectHashes(folder2, options);
+        long started = System.nanoTime();
+        ComparisonSummary summary = FolderComparison.compare(index1, index2, sink, false);
+        if (options.getMetrics() != null) options.getMetrics().stage(ScanMetrics.Stage.COMPARISON, started);
+        return summary;
+    }
+
+    // Runs the comparison with the report file as its sink: no table is built, whatever the row count.
+    private void exportReport() {
+        if (!validatePaths(isFolderMode)) return;
+        File target = chooseReportFile();
+        if (target == null) return;
+        String p1 = path1Field.getText();
+        String p2 = path2Field.getText();
+        boolean folders = isFolderMode;
+        String algorithm = scanOptions.getAlgorithm();
+        runInBackground("exporting report", (options, progress) -> {
+            try (ReportWriter report = ReportWriter.create(target.toPath(), null, false)) {
+                report.metrics(options.getMetrics());
+                report.begin("Comparison of " + p1 + " and " + p2, folders ? "File Path" : "File", "Status");
+                ComparisonSummary summary;
+                if (folders) {
+                    summary = compareFolders(new File(p1), new File(p2), options, report.statusSink());
                 } else {
-                    rows.add(new String[]{rel, "Modified"});
-                    modified++;
-                }
-            }
-            for (String rel : map2.keySet()) {
-                if (!map1.containsKey(rel)) {
-                    rows.add(new String[]{rel, "Extra"});
-                    extra++;
+                    File f1 = new File(p1), f2 = new File(p2);
+                    IntegrityStatus status = getFileHash(f1, options).equals(getFileHash(f2, options)) ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED;
+                    report.statusSink().accept(f1.getName(), status);
+                    summary = new ComparisonSummary();
+                    summary.add(status);
                 }
+                report.summary(summary + " (" + algorithm + ")");
+                return summary;
             }
+        }, summary -> {
+            info.setText("Report saved: " + summary);
+            saveHistoryRecord(folders ? "Folder" : "File", p1, p2, summary + " (" + algorithm + ")");
+        });
+    }
 
-            // Convert rows to 2D array for table
-            String[][] tableData = new String[rows.size()][2];
-            for (int i = 0; i < rows.size(); i++) {
-                tableData[i] = rows.get(i);
-            }
+    private void manifestAction() {
+        File folder = new File(path1Field.getText().trim());
+        if (!folder.isDirectory()) {
+            JOptionPane.showMessageDialog(this, "Please select a valid folder in Path 1.");
+            return;
+        }
+        Object[] choices = { "Create Manifest", "Check Against Manifest", "Cancel" };
+        int choice = JOptionPane.showOptionDialog(this, "Folder: " + folder, "Checksum Manifest",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+        if (choice == 0) createManifest(folder);
+        else if (choice == 1) checkManifest(folder);
+    }
+
+    // The same scan as Generate Hashes, written out as plain whole-file digests.
+    private void createManifest(File folder) {
+        File file = chooseManifestFile(folder, true);
+        if (file == null) return;
+        runInBackground("writing manifest", (options, progress) -> {
+            HashIndex index = collectHashes(folder, options.chunking(ScanOptions.Chunking.OFF));
+            ChecksumManifest.write(index, file.toPath());
+            return index;
+        }, index -> {
+            info.setText("Manifest saved: " + index.size() + " files");
+            saveHistoryRecord("Manifest", folder.getPath(), file.getPath(), "Created, root digest " + index.getRootDigest()
+                    + " (" + index.getAlgorithm() + ")");
+        });
+    }
 
-            String[] cols = { "File Path", "Status" };
-            showResultTable(tableData, cols);
+    private void checkManifest(File folder) {
+        File file = chooseManifestFile(folder, false);
+        if (file == null) return;
+        String algorithm = scanOptions.getAlgorithm();
+        ComparisonTableModel model = new ComparisonTableModel("File Path");
+        runInBackground("checking manifest", (options, progress) -> {
+            ChecksumManifest manifest = new ChecksumManifest(options);
+            ComparisonSummary summary = manifest.check(file.toPath(), folder, model);
+            return summary + (manifest.isStoppedEarly() ? " (stopped early)" : "");
+        }, summary -> {
+            model.publish();
+            info.setText(summary);
+            saveHistoryRecord("Manifest", folder.getPath(), file.getPath(), summary + " (" + algorithm + ")");
+        });
+        if (currentTask != null) showResultTable(model);
+    }
 
-            String summary = String.format("Same:%d Modified:%d Missing:%d Extra:%d", same, modified, missing, extra);
-            saveHistoryRecord("Folder", path1Field.getText(), path2Field.getText(), summary);
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error comparing folders: " + ex.getMessage());
+    private File chooseManifestFile(File folder, boolean save) {
+        JFileChooser chooser = new JFileChooser(folder.getParentFile());
+        chooser.setDialogTitle(save ? "Save Manifest" : "Open Manifest");
+        FileNameExtensionFilter text = new FileNameExtensionFilter("Checksum list (*.sha256, *.sha512, *.md5, SHA256SUMS)", "sha256", "sha512", "md5", "sha1", "txt");
+        FileNameExtensionFilter binary = new FileNameExtensionFilter("Binary index (*.idx)", "idx");
+        chooser.addChoosableFileFilter(text);
+        chooser.addChoosableFileFilter(binary);
+        chooser.setFileFilter(text);
+        if (!save) {
+            chooser.setAcceptAllFileFilterUsed(true);
+            return chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION ? chooser.getSelectedFile() : null;
+        }
+        chooser.setSelectedFile(new File(folder.getName() + ".sha256"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return null;
+        File file = chooser.getSelectedFile();
+        if (chooser.getFileFilter() == binary && !ChecksumManifest.isBinary(file.toPath())) {
+            file = new File(file.getPath().replaceFirst("\\.sha256$", "") + ".idx");
         }
+        return file;
     }
 
-    private void showResultTable(String[][] data, String[] cols) {
-        DefaultTableModel model = new DefaultTableModel(data, cols) {
-            @Override public boolean isCellEditable(int row, int column) { return false; }
-        };
+    // Format follows the extension; one is added from the chosen filter when missing, and .gz compresses.
+    private File chooseReportFile() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Save Report");
+        FileNameExtensionFilter csv = new FileNameExtensionFilter("CSV (*.csv, *.csv.gz)", "csv", "gz");
+        FileNameExtensionFilter jsonl = new FileNameExtensionFilter("JSON Lines (*.jsonl, *.jsonl.gz)", "jsonl", "gz");
+        FileNameExtensionFilter html = new FileNameExtensionFilter("HTML report (*.html)", "html");
+        chooser.addChoosableFileFilter(csv);
+        chooser.addChoosableFileFilter(jsonl);
+        chooser.addChoosableFileFilter(html);
+        chooser.setFileFilter(csv);
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return null;
+        File file = chooser.getSelectedFile();
+        if (ReportWriter.Format.forFile(file.getName()) == null) {
+            String ext = chooser.getFileFilter() == html ? ".html" : chooser.getFileFilter() == jsonl ? ".jsonl" : ".csv";
+            file = new File(file.getPath() + ext);
+        }
+        return file;
+    }
+
+    // Non-modal and live: rows appear while the comparison is still running. The model is
+    // virtual, so only the rows on screen are ever turned into Strings.
+    private void showResultTable(ComparisonTableModel model) {
         JTable table = new JTable(model);
         table.setFont(new Font("Consolas", Font.PLAIN, 13));
         table.setRowHeight(26);
         table.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 14));
-        table.setAutoCreateRowSorter(true);
-
-        // Color renderer for status column
-        table.getColumnModel().getColumn(1).setCellRenderer((table1, value, isSelected, hasFocus, row, column) -> {
-            JLabel lbl = new JLabel(value.toString());
-            lbl.setOpaque(true);
-            String v = value.toString();
-            if ("Same".equals(v)) lbl.setBackground(new Color(198, 239, 206));
-            else if ("Modified".equals(v)) lbl.setBackground(new Color(255, 224, 178));
-            else if ("Missing".equals(v)) lbl.setBackground(new Color(255, 204, 203));
-            else if ("Extra".equals(v)) lbl.setBackground(new Color(217, 234, 246));
-            else lbl.setBackground(Color.white);
-            lbl.setBorder(new EmptyBorder(4,6,4,6));
-            return lbl;
+        table.getColumnModel().getColumn(1).setCellRenderer(new StatusRenderer());
+        table.getTableHeader().setToolTipText("Click Status to group rows by status, File Path for path order");
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override public void mouseClicked(MouseEvent e) {
+                model.groupByStatus(table.columnAtPoint(e.getPoint()) == 1);
+            }
         });
 
         JScrollPane scroll = new JScrollPane(table);
         scroll.setPreferredSize(new Dimension(860, 420));
 
-        JDialog dialog = new JDialog(this, "Comparison Result", true);
+        // Status filters; their counts are kept by the model, never recounted
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 4));
+        List<JCheckBox> filterBoxes = new ArrayList<>();
+        for (IntegrityStatus s : IntegrityStatus.values()) {
+            JCheckBox box = createOptionBox(s.label, model.isShown(s), null, selected -> model.setShown(s, selected));
+            filterBoxes.add(box);
+            filters.add(box);
+        }
+        Runnable refreshCounts = () -> {
+            for (IntegrityStatus s : IntegrityStatus.values()) {
+                filterBoxes.get(s.ordinal()).setText(s.label + " (" + model.count(s) + ")");
+            }
+        };
+        refreshCounts.run();
+        model.addTableModelListener(e -> refreshCounts.run());
+
+        JDialog dialog = new JDialog(this, "Comparison Result", false);
         dialog.setLayout(new BorderLayout(8,8));
+        dialog.add(filters, BorderLayout.NORTH);
         dialog.add(scroll, BorderLayout.CENTER);
 
         JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        JButton exportBtn = createColorButton("Export CSV", new Color(34, 139, 34));
+        JButton exportBtn = createColorButton("Export", new Color(34, 139, 34));
         JButton closeBtn = createColorButton("Close", new Color(128, 128, 128));
         bottom.add(exportBtn);
         bottom.add(closeBtn);
         dialog.add(bottom, BorderLayout.SOUTH);
 
-        exportBtn.addActionListener(e -> exportTableToCSV(table));
+        exportBtn.addActionListener(e -> exportTable(model));
         closeBtn.addActionListener(e -> dialog.dispose());
 
+        // Hand rows from the scan thread to the table a few times a second
+        Timer publisher = new Timer(200, e -> model.publish());
+        publisher.start();
+        ScanTask<?> feeding = currentTask; // the comparison still filling the table, if any
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override public void windowClosed(WindowEvent e) {
+                publisher.stop();
+                // nobody is looking any more: stop the comparison and keep no rows for it
+                model.dispose();
+                if (feeding != null && !feeding.isDone()) feeding.cancelScan();
+            }
+        });
+
         dialog.pack();
         dialog.setLocationRelativeTo(this);
         dialog.setVisible(true);
     }
 
-    private void exportTableToCSV(JTable table) {
-        JFileChooser chooser = new JFileChooser();
-        chooser.setDialogTitle("Save CSV Report");
-        int opt = chooser.showSaveDialog(this);
-        if (opt != JFileChooser.APPROVE_OPTION) return;
-        File file = chooser.getSelectedFile();
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-            DefaultTableModel model = (DefaultTableModel) table.getModel();
-            // header
-            for (int c = 0; c < model.getColumnCount(); c++) {
-                if (c > 0) bw.write(",");
-                bw.write(model.getColumnName(c));
+    // One label reused for every status cell instead of a new JLabel per paint.
+    private static final class StatusRenderer extends DefaultTableCellRenderer {
+        private static final Color[] COLORS = {
+                new Color(198, 239, 206), // Same
+                new Color(255, 224, 178), // Modified
+                new Color(255, 204, 203), // Missing
+                new Color(217, 234, 246)  // Extra
+        };
+        private static final Border PADDING = new EmptyBorder(4,6,4,6);
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+            super.getTableCellRendererComponent(table, value, isSelected, false, row, column);
+            if (!isSelected) {
+                IntegrityStatus status = ((ComparisonTableModel) table.getModel()).statusAt(row);
+                setBackground(COLORS[status.ordinal()]);
             }
-            bw.newLine();
-            // rows
-            for (int r = 0; r < model.getRowCount(); r++) {
-                for (int c = 0; c < model.getColumnCount(); c++) {
-                    if (c > 0) bw.write(",");
-                    bw.write(model.getValueAt(r, c).toString());
+            setBorder(PADDING); // super resets the border on every call
+            return this;
+        }
+    }
+
+    // Non-modal: alerts keep arriving while the user carries on in the main window.
+    private void showWatchDialog(File folder, DigestTable baseline) throws IOException {
+
+        JTextArea log = createSummaryArea("Changes against baseline (" + baseline.size() + " files)");
+        JScrollPane scroll = new JScrollPane(log);
+        scroll.setPreferredSize(new Dimension(760, 360));
+        DateTimeFormatter time = DateTimeFormatter.ofPattern("HH:mm:ss");
+        IntegrityWatcher watcher = new IntegrityWatcher(folder, baseline, scanOptions.copy(), (path, status) ->
+                SwingUtilities.invokeLater(() -> log.append(LocalDateTime.now().format(time) + "  " + status.label + "  " + path + "\n")));
+
+        JDialog dialog = new JDialog(this, "Watching " + folder.getAbsolutePath(), false);
+        dialog.setLayout(new BorderLayout(8,8));
+        dialog.add(scroll, BorderLayout.CENTER);
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton stopBtn = createColorButton("Stop Watching", new Color(220, 20, 60));
+        bottom.add(stopBtn);
+        dialog.add(bottom, BorderLayout.SOUTH);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override public void windowClosed(WindowEvent e) {
+                try {
+                    watcher.close();
+                } catch (IOException ignored) {
+                    // already closed
                 }
-                bw.newLine();
             }
-            JOptionPane.showMessageDialog(this, "CSV exported successfully.");
+        });
+        stopBtn.addActionListener(e -> dialog.dispose());
+
+        watcher.start();
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    // Exports the rows currently shown (after status filters) straight from the columnar model.
+    private void exportTable(ComparisonTableModel model) {
+        File file = chooseReportFile();
+        if (file == null) return;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try (ReportWriter report = ReportWriter.create(file.toPath(), null, false)) {
+            report.begin("Comparison Result", model.getColumnName(0), model.getColumnName(1));
+            for (int r = 0; r < model.getRowCount(); r++) {
+                report.row(model.pathAt(r), model.statusAt(r).label);
+            }
+            StringBuilder counts = new StringBuilder();
+            for (IntegrityStatus st : IntegrityStatus.values()) {
+                if (model.isShown(st)) counts.append(counts.length() > 0 ? " " : "").append(st.label).append(':').append(model.count(st));
+            }
+            report.summary(counts.toString());
         } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error exporting CSV: " + ex.getMessage());
+            setCursor(Cursor.getDefaultCursor());
+            JOptionPane.showMessageDialog(this, "Error exporting report: " + ex.getMessage());
+            return;
+        }
+        setCursor(Cursor.getDefaultCursor());
+        JOptionPane.showMessageDialog(this, "Report exported successfully.");
+    }
+
+    // Opened on first use; the old history.txt is imported into it once.
+    private HistoryStore history() throws IOException {
+        if (historyStore == null) {
+            historyStore = HistoryStore.open(new File(HISTORY_DIR));
+            historyStore.migrate(new File(HISTORY_FILE));
         }
+        return historyStore;
     }
 
     private void saveHistoryRecord(String mode, String p1, String p2, String result) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(HISTORY_FILE, true))) {
-            bw.write(timestamp + "|" + mode + "|" + p1 + "|" + p2 + "|" + result);
-            bw.newLine();
+        long started = System.nanoTime();
+        try {
+            history().append(mode, p1, p2, result);
         } catch (IOException e) {
             // ignore silently
         }
+        if (lastMetrics != null) lastMetrics.stage(ScanMetrics.Stage.HISTORY, started);
     }
 
-    private void showHistoryDialog() {
-        List<String[]> records = new ArrayList<>();
-        File hf = new File(HISTORY_FILE);
-        if (!hf.exists()) {
-            JOptionPane.showMessageDialog(this, "No history found.");
+    private void showMetricsDialog() {
+        if (lastMetrics == null) {
+            JOptionPane.showMessageDialog(this, "No scan has run yet.");
             return;
         }
-        try (BufferedReader br = new BufferedReader(new FileReader(hf))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\\|", 5);
-                if (parts.length == 5) records.add(parts);
-            }
+        ScanMetrics metrics = lastMetrics;
+        JTextArea text = new JTextArea(metrics.toString());
+        text.setEditable(false);
+        text.setFont(new Font("Consolas", Font.PLAIN, 13));
+        JScrollPane scroll = new JScrollPane(text);
+        scroll.setPreferredSize(new Dimension(720, 360));
+
+        JDialog dialog = new JDialog(this, "Scan Metrics", false);
+        dialog.setLayout(new BorderLayout(8,8));
+        dialog.add(scroll, BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton refreshBtn = createColorButton("Refresh", new Color(100, 149, 237));
+        JButton copyBtn = createColorButton("Copy JSON", new Color(34, 139, 34));
+        JButton closeBtn = createColorButton("Close", new Color(128, 128, 128));
+        bottom.add(refreshBtn);
+        bottom.add(copyBtn);
+        bottom.add(closeBtn);
+        dialog.add(bottom, BorderLayout.SOUTH);
+
+        // a scan still running keeps counting, so the text can be brought up to date
+        refreshBtn.addActionListener(e -> text.setText(metrics.toString()));
+        copyBtn.addActionListener(e -> Toolkit.getDefaultToolkit().getSystemClipboard()
+                .setContents(new StringSelection(metrics.getJson()), null));
+        closeBtn.addActionListener(e -> dialog.dispose());
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    // The query only yields ids; a page of records is read when it is shown.
+    private static final class HistoryView {
+        long[] ids = new long[0];
+        int page;
+        long[] rowIds = new long[0];
+    }
+
+    private void showHistoryDialog() {
+        HistoryStore store;
+        try {
+            store = history();
         } catch (IOException e) {
             JOptionPane.showMessageDialog(this, "Error reading history.");
             return;
         }
+        if (store.size() == 0) {
+            JOptionPane.showMessageDialog(this, "No history found.");
+            return;
+        }
 
         String[] cols = { "Date & Time", "Mode", "Path 1", "Path 2", "Result" };
-        String[][] data = new String[records.size()][5];
-        for (int i = 0; i < records.size(); i++) data[i] = records.get(i);
-
-        DefaultTableModel model = new DefaultTableModel(data, cols) {
+        DefaultTableModel model = new DefaultTableModel(cols, 0) {
             @Override public boolean isCellEditable(int row, int column) { return false; }
         };
         JTable table = new JTable(model);
@@ -494,31 +859,102 @@ public class FileIntegritySystem extends JFrame {
         dialog.setLayout(new BorderLayout(8,8));
         dialog.add(scroll, BorderLayout.CENTER);
 
+        // Filters: exact path (either side) and a time window
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
+        JTextField pathFilter = new JTextField(32);
+        String[] periods = { "All time", "Last 24 hours", "Last 7 days", "Last 30 days", "Last year" };
+        long[] periodMillis = { 0, 86_400_000L, 7 * 86_400_000L, 30 * 86_400_000L, 365 * 86_400_000L };
+        JComboBox<String> periodBox = new JComboBox<>(periods);
+        JButton searchBtn = createColorButton("Search", new Color(10, 115, 230));
+        filters.add(new JLabel("Path:"));
+        filters.add(pathFilter);
+        filters.add(new JLabel("Period:"));
+        filters.add(periodBox);
+        filters.add(searchBtn);
+        dialog.add(filters, BorderLayout.NORTH);
+
         JPanel controls = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton prevBtn = createColorButton("< Prev", new Color(100, 149, 237));
+        JLabel pageLabel = new JLabel();
+        JButton nextBtn = createColorButton("Next >", new Color(100, 149, 237));
         JButton deleteSelected = createColorButton("Delete Selected", new Color(220, 20, 60));
         JButton deleteAll = createColorButton("Delete All", new Color(220, 20, 60));
         JButton closeBtn = createColorButton("Close", new Color(120, 120, 120));
+        controls.add(prevBtn);
+        controls.add(pageLabel);
+        controls.add(nextBtn);
         controls.add(deleteSelected);
         controls.add(deleteAll);
         controls.add(closeBtn);
         dialog.add(controls, BorderLayout.SOUTH);
 
+        HistoryView view = new HistoryView();
+        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        Runnable showPage = () -> {
+            int pages = Math.max(1, (view.ids.length + HISTORY_PAGE_SIZE - 1) / HISTORY_PAGE_SIZE);
+            view.page = Math.max(0, Math.min(view.page, pages - 1));
+            int from = view.page * HISTORY_PAGE_SIZE;
+            model.setRowCount(0);
+            try {
+                List<HistoryStore.Entry> entries = store.read(view.ids, from, Math.min(view.ids.length, from + HISTORY_PAGE_SIZE));
+                view.rowIds = new long[entries.size()];
+                for (int i = 0; i < entries.size(); i++) {
+                    HistoryStore.Entry r = entries.get(i);
+                    view.rowIds[i] = r.id;
+                    String when = LocalDateTime.ofInstant(Instant.ofEpochMilli(r.time), ZoneId.systemDefault()).format(timeFormat);
+                    model.addRow(new Object[] { when, r.mode, r.path1, r.path2, r.result });
+                }
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(dialog, "Error reading history.");
+            }
+            pageLabel.setText("Page " + (view.page + 1) + " of " + pages + " (" + view.ids.length + " records)");
+            prevBtn.setEnabled(view.page > 0);
+            nextBtn.setEnabled(view.page < pages - 1);
+        };
+        Runnable search = () -> {
+            long period = periodMillis[periodBox.getSelectedIndex()];
+            long from = period == 0 ? 0 : System.currentTimeMillis() - period;
+            view.ids = store.query(from, Long.MAX_VALUE, pathFilter.getText().trim());
+            showPage.run();
+        };
+        search.run();
+
+        searchBtn.addActionListener(e -> {
+            view.page = 0;
+            search.run();
+        });
+        pathFilter.addActionListener(e -> searchBtn.doClick());
+        prevBtn.addActionListener(e -> {
+            view.page--;
+            showPage.run();
+        });
+        nextBtn.addActionListener(e -> {
+            view.page++;
+            showPage.run();
+        });
+
         deleteSelected.addActionListener(e -> {
-            int sel = table.getSelectedRow();
-            if (sel == -1) {
+            int[] sel = table.getSelectedRows();
+            if (sel.length == 0) {
                 JOptionPane.showMessageDialog(dialog, "Select a record to delete.");
                 return;
             }
-            records.remove(sel);
-            writeHistory(records);
-            dialog.dispose();
-            JOptionPane.showMessageDialog(this, "Selected record deleted.");
+            try {
+                for (int row : sel) store.delete(view.rowIds[row]);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(dialog, "Error updating history.");
+            }
+            search.run();
         });
 
         deleteAll.addActionListener(e -> {
             int ans = JOptionPane.showConfirmDialog(dialog, "Delete all history?", "Confirm", JOptionPane.YES_NO_OPTION);
             if (ans == JOptionPane.YES_OPTION) {
-                new File(HISTORY_FILE).delete();
+                try {
+                    store.deleteAll();
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(dialog, "Error updating history.");
+                }
                 dialog.dispose();
                 JOptionPane.showMessageDialog(this, "All history deleted.");
             }
@@ -531,18 +967,11 @@ public class FileIntegritySystem extends JFrame {
         dialog.setVisible(true);
     }
 
-    private void writeHistory(List<String[]> records) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(HISTORY_FILE, false))) {
-            for (String[] r : records) {
-                bw.write(String.join("|", r));
-                bw.newLine();
-            }
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error updating history file.");
-        }
-    }
-
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // Any arguments select the headless command-line mode; the window is never created
+            System.exit(IntegrityCli.run(args));
+        }
         SwingUtilities.invokeLater(() -> {
             FileIntegritySystem app = new FileIntegritySystem();
             app.setVisible(true);
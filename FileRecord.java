@@ -0,0 +1,31 @@
+// What is known about one file: enough metadata to tell whether it changed, plus its digest.
+final class FileRecord {
+
+    final long size;
+    final long modifiedNanos;
+    final long fileKey; // hash of the inode/device identity where the platform provides one, otherwise 0
+    final byte[] digest;
+
+    FileRecord(long size, long modifiedNanos, long fileKey, byte[] digest) {
+        this.size = size;
+        this.modifiedNanos = modifiedNanos;
+        this.fileKey = fileKey;
+        this.digest = digest;
+    }
+
+    boolean sameMetadata(FileRecord other) {
+        return other != null && size == other.size && modifiedNanos == other.modifiedNanos && fileKey == other.fileKey;
+    }
+
+    // 64-bit FNV-1a of the platform file key, e.g. "(dev=803,ino=1234)" on Linux.
+    static long keyOf(Object fileKey) {
+        if (fileKey == null) return 0;
+        String s = fileKey.toString();
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+}
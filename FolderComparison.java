@@ -0,0 +1,124 @@
+// Merge-joins two scan tables (both in PathOrder) and reports every path to the sink in order.
+// Digests are compared as raw bytes; paths are only turned into Strings one row at a time.
+// Given whole indexes, identical subtrees are recognised by their folder digests and skipped.
+final class FolderComparison {
+
+    private FolderComparison() {}
+
+    static ComparisonSummary compare(DigestTable t1, DigestTable t2, ComparisonSink sink) throws Exception {
+        requireSameAlgorithm(t1.algorithm(), t2.algorithm());
+        requireSameChunking(t1.chunkSpec(), t2.chunkSpec());
+        ComparisonSummary summary = new ComparisonSummary();
+        int i = 0, j = 0;
+        String p1 = t1.size() > 0 ? t1.path(0) : null;
+        String p2 = t2.size() > 0 ? t2.path(0) : null;
+        while (p1 != null || p2 != null) {
+            int cmp = p1 == null ? 1 : p2 == null ? -1 : PathOrder.compare(p1, p2);
+            String path;
+            IntegrityStatus status;
+            if (cmp < 0) {
+                path = p1;
+                status = IntegrityStatus.MISSING;
+                p1 = ++i < t1.size() ? t1.path(i) : null;
+            } else if (cmp > 0) {
+                path = p2;
+                status = IntegrityStatus.EXTRA;
+                p2 = ++j < t2.size() ? t2.path(j) : null;
+            } else {
+                path = p1;
+                status = t1.sameDigest(i, t2, j) ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED;
+                p1 = ++i < t1.size() ? t1.path(i) : null;
+                p2 = ++j < t2.size() ? t2.path(j) : null;
+            }
+            summary.add(status);
+            sink.accept(path, status);
+        }
+        return summary;
+    }
+
+    // Like the table merge above, but a folder that starts at the current row on both sides and has
+    // the same MerkleTree digest on both is settled in one step: everything below it is Same. With
+    // changesOnly those Same files are only counted, not reported, so for a mostly unchanged replica
+    // the work is proportional to the changed paths and the folders on their way, not the file count.
+    static ComparisonSummary compare(HashIndex i1, HashIndex i2, ComparisonSink sink, boolean changesOnly) throws Exception {
+        DigestTable t1 = i1.getTable(), t2 = i2.getTable();
+        requireSameAlgorithm(t1.algorithm(), t2.algorithm());
+        requireSameChunking(t1.chunkSpec(), t2.chunkSpec());
+        boolean contentDefined = t1.chunkSpec().startsWith("cdc");
+        MerkleTree m1 = i1.getMerkle(), m2 = i2.getMerkle();
+        ComparisonSummary summary = new ComparisonSummary();
+        int i = 0, j = 0;
+        int d = 0; // first folder of m1 that does not start before row i
+        String p1 = null, p2 = null;
+        while (i < t1.size() || j < t2.size()) {
+            if (i < t1.size() && j < t2.size()) {
+                while (d < m1.size() && m1.firstRow(d) < i) d++;
+                int skip = -1, other = -1;
+                // folders starting at the same row are nested, outermost first
+                for (int k = d; k < m1.size() && m1.firstRow(k) == i && skip < 0; k++) {
+                    int k2 = m2.find(m1.dir(k));
+                    if (k2 >= 0 && m2.firstRow(k2) == j && m1.sameDigest(k, m2, k2)) {
+                        skip = k;
+                        other = k2;
+                    }
+                }
+                if (skip >= 0) {
+                    int end = m1.endRow(skip);
+                    summary.add(IntegrityStatus.SAME, end - i);
+                    if (!changesOnly) {
+                        for (int row = i; row < end; row++) sink.accept(t1.path(row), IntegrityStatus.SAME);
+                    }
+                    i = end;
+                    j = m2.endRow(other);
+                    p1 = p2 = null;
+                    continue;
+                }
+            }
+            if (p1 == null && i < t1.size()) p1 = t1.path(i);
+            if (p2 == null && j < t2.size()) p2 = t2.path(j);
+            int cmp = p1 == null ? 1 : p2 == null ? -1 : PathOrder.compare(p1, p2);
+            String path;
+            IntegrityStatus status;
+            if (cmp < 0) {
+                path = p1;
+                status = IntegrityStatus.MISSING;
+                i++;
+                p1 = null;
+            } else if (cmp > 0) {
+                path = p2;
+                status = IntegrityStatus.EXTRA;
+                j++;
+                p2 = null;
+            } else {
+                path = p1;
+                status = t1.sameDigest(i, t2, j) ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED;
+                FileChunks c1 = t1.chunks(i), c2 = t2.chunks(j);
+                i++;
+                j++;
+                p1 = p2 = null;
+                if (status == IntegrityStatus.MODIFIED && c1 != null && c2 != null) {
+                    summary.add(status);
+                    sink.accept(path, status, FileChunks.differingRanges(c1, c2, contentDefined));
+                    continue;
+                }
+            }
+            summary.add(status);
+            if (!changesOnly || status != IntegrityStatus.SAME) sink.accept(path, status);
+        }
+        return summary;
+    }
+
+    // File digests taken over chunks never match whole-file ones, and chunk lists only line up with
+    // the same chunking, so a mismatch would also report every large file Modified.
+    static void requireSameChunking(String a, String b) {
+        if (!a.equals(b)) {
+            throw new IllegalArgumentException("Cannot compare digests chunked as '" + (a.isEmpty() ? "off" : a)
+                    + "' with digests chunked as '" + (b.isEmpty() ? "off" : b) + "'");
+        }
+    }
+
+    // Digests of different algorithms never match, so comparing them would report everything Modified.
+    static void requireSameAlgorithm(String a, String b) {
+        if (!a.equals(b)) throw new IllegalArgumentException("Cannot compare " + a + " digests with " + b + " digests");
+    }
+}
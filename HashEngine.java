@@ -0,0 +1,183 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hashes a folder tree on a worker pool while it is still being listed. The walker appends rows to
+// a compact DigestTable in PathOrder and hands each file that needs reading to the IoScheduler at
+// once, staying at most a small window ahead; finished digests are written back by the walking thread
+// into their pre-sorted row, so output never depends on thread timing.
+//
+// When a previous index for the root is available, the listing is merge-joined with it on the fly:
+// files whose size, modification time and file key are unchanged reuse the stored digest instead
+// of being read again.
+final class HashEngine {
+
+    private final ScanOptions options;
+    private final AtomicInteger reusedFiles = new AtomicInteger();
+    private final List<String> sampleMismatches = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> linkLoops = Collections.synchronizedList(new ArrayList<>());
+    private int resumedShards;
+
+    HashEngine(ScanOptions options) {
+        this.options = options;
+    }
+
+    // Scans root, consulting and then refreshing its on-disk index when indexing is enabled.
+    HashIndex scan(File root) throws Exception {
+        HashIndex current = scan(root, loadIndex(root));
+        saveIndex(root, current);
+        return current;
+    }
+
+    HashIndex loadIndex(File root) throws Exception {
+        if (!options.isIndexEnabled()) return null;
+        return HashIndex.load(HashIndex.locationFor(root, options), root.getAbsolutePath());
+    }
+
+    // Whether previous was made with this engine's algorithm and chunking, so its digests can be reused.
+    boolean isCompatible(HashIndex previous) {
+        return previous.getAlgorithm().equals(options.getAlgorithm()) && previous.getTable().chunkSpec().equals(options.getChunkSpec());
+    }
+
+    void saveIndex(File root, HashIndex index) throws Exception {
+        if (options.isIndexEnabled()) {
+            try {
+                index.save(HashIndex.locationFor(root, options));
+            } catch (IOException e) {
+                // the scan itself succeeded; a stale index only costs a rehash next time, and the
+                // checkpoints of a sharded scan are kept so that rehash resumes from them
+                return;
+            }
+        }
+        discardCheckpoints(root);
+    }
+
+    // Drops the shard checkpoints of a sharded scan of root once its result is saved or used up.
+    void discardCheckpoints(File root) throws Exception {
+        if (options.getShards() > 1 && options.getShard() == null) new ScanCoordinator(options).discardCheckpoints(root);
+    }
+
+    HashIndex scan(File root, HashIndex previous) throws Exception {
+        if (options.getShards() > 1 && options.getShard() == null) {
+            ScanCoordinator coordinator = new ScanCoordinator(options);
+            HashIndex merged = coordinator.scan(root, previous);
+            linkLoops.addAll(coordinator.getLinkLoops());
+            resumedShards += coordinator.getResumedShards();
+            return merged;
+        }
+        if (previous != null && !isCompatible(previous)) previous = null;
+        Hasher hasher = Hashers.forName(options.getAlgorithm());
+        DigestTable table = new DigestTable(hasher.name(), hasher.digestLength(), options.getChunkSpec());
+        DigestTable prev = previous == null || options.isForceRehash() ? null : previous.getTable();
+        ScanProgress progress = options.getProgress();
+        if (progress != null) progress.phase("Scanning " + root.getName());
+        int window = options.getParallelism() * 64;
+        IoScheduler<Hashed> hashing = new IoScheduler<>(options);
+        // the chunks of large files are hashed on a pool of their own, sized for this run
+        ForkJoinPool chunking = options.getChunking() != ScanOptions.Chunking.OFF ? ChunkedHasher.newPool(options) : null;
+        int inFlight = 0;
+        try {
+            SortedTreeWalker walker = new SortedTreeWalker(root, options);
+            int j = 0; // merge cursor into prev
+            long newFiles = 0, newBytes = 0, reused = 0;
+            for (SortedTreeWalker.WalkEntry e; (e = walker.next()) != null; ) {
+                FileRecord m = e.metadata;
+                int row = table.add(e.relative, m.size, m.modifiedNanos, m.fileKey);
+                int match = -1;
+                if (prev != null) {
+                    int cmp = 1;
+                    while (j < prev.size() && (cmp = PathOrder.compare(prev.path(j), e.relative)) < 0) j++;
+                    if (cmp == 0 && table.sameMetadata(row, prev, j)) match = j;
+                }
+                int sample = -1;
+                if (match >= 0) {
+                    if (options.getVerifySample() > 0 && ThreadLocalRandom.current().nextDouble() < options.getVerifySample()) {
+                        sample = match;
+                    } else {
+                        table.copyDigest(row, prev, match);
+                        reusedFiles.incrementAndGet();
+                        reused++;
+                    }
+                }
+                if (match < 0 || sample >= 0) {
+                    Path path = e.path;
+                    int r = row, s = sample;
+                    boolean chunked = options.isChunked(m.size);
+                    hashing.submit(path, m.size, () -> {
+                        if (!chunked) return new Hashed(r, s, FileHasher.digest(path, options.getAlgorithm(), options), null);
+                        FileChunks chunks = ChunkedHasher.hash(path, options, chunking);
+                        return new Hashed(r, s, chunks.fileDigest(hasher), chunks);
+                    });
+                    newFiles++;
+                    newBytes += m.size;
+                    // the walk stays at most a window ahead of the hashers, and lands results as it goes
+                    if (++inFlight >= window) {
+                        land(table, prev, hashing.take());
+                        inFlight--;
+                    }
+                    for (Future<Hashed> done; inFlight > 0 && (done = hashing.poll()) != null; inFlight--) land(table, prev, done);
+                }
+                if (progress != null && (table.size() & 1023) == 0) {
+                    progress.checkCancelled();
+                    progress.addTotals(newFiles + reused, newBytes);
+                    progress.filesDone(reused);
+                    newFiles = newBytes = reused = 0;
+                }
+            }
+            linkLoops.addAll(walker.getLoops());
+            if (progress != null) {
+                progress.addTotals(newFiles + reused, newBytes);
+                progress.filesDone(reused);
+                progress.phase("Hashing " + root.getName());
+            }
+            for (; inFlight > 0; inFlight--) land(table, prev, hashing.take());
+            if (options.getMetrics() != null) options.getMetrics().filesReused(reusedFiles.get());
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            hashing.shutdownNow();
+            if (chunking != null) chunking.shutdownNow();
+        }
+        return new HashIndex(root.getAbsolutePath(), table);
+    }
+
+    // Stores one finished digest; only the walking thread touches the table.
+    private void land(DigestTable table, DigestTable prev, Future<Hashed> done) throws Exception {
+        Hashed h = done.get();
+        table.setDigest(h.row, h.digest);
+        if (h.chunks != null) table.setChunks(h.row, h.chunks);
+        if (options.getProgress() != null) options.getProgress().fileDone();
+        if (h.sampleOf >= 0 && !prev.sameDigest(h.sampleOf, h.digest)) sampleMismatches.add(table.path(h.row));
+    }
+
+    // Files whose metadata was unchanged but whose sampled content no longer matched the index.
+    List<String> getSampleMismatches() { return sampleMismatches; }
+
+    // Followed folder links that pointed back at one of their own parents, and were not walked.
+    List<String> getLinkLoops() { return linkLoops; }
+
+    // Shards of sharded scans that were taken from an interrupted run's checkpoints.
+    int getResumedShards() { return resumedShards; }
+
+    private static final class Hashed {
+        final int row;
+        final int sampleOf; // row in the previous table to check against, or -1
+        final byte[] digest;
+        final FileChunks chunks; // null unless hashed in chunks
+
+        Hashed(int row, int sampleOf, byte[] digest, FileChunks chunks) {
+            this.row = row;
+            this.sampleOf = sampleOf;
+            this.digest = digest;
+            this.chunks = chunks;
+        }
+    }
+}
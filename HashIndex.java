@@ -0,0 +1,215 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+// Persistent per-root hash index. Entries are written in path order with each path stored as
+// (length shared with the previous path, new suffix), numbers as varints and digests as raw bytes,
+// so a million-entry index is a few tens of MB and loads in a single sequential pass. The folder
+// digests of the tree's MerkleTree follow the entries, stored the same way, and then the chunk
+// digests of any file that was hashed in chunks.
+final class HashIndex {
+
+    static final int MAGIC = 0x46495358; // "FISX"
+    private static final int VERSION = 4; // 3 had no chunks, 2 no folder digests (rebuilt on demand)
+
+    private final String root;
+    private final DigestTable table;
+    private MerkleTree merkle;
+
+    HashIndex(String root, DigestTable table) {
+        this.root = root;
+        this.table = table;
+    }
+
+    private HashIndex(String root, DigestTable table, MerkleTree merkle) {
+        this(root, table);
+        this.merkle = merkle;
+    }
+
+    String getRoot() { return root; }
+
+    String getAlgorithm() { return table.algorithm(); }
+
+    DigestTable getTable() { return table; }
+
+    int size() { return table.size(); }
+
+    // Built from the table the first time it is needed, unless it came with the loaded index.
+    synchronized MerkleTree getMerkle() {
+        if (merkle == null) merkle = MerkleTree.build(table);
+        return merkle;
+    }
+
+    String getRootDigest() { return getMerkle().rootHex(); }
+
+    // Index files live in the index folder (relative to the working directory unless configured
+    // otherwise), which tree walks always leave out, so they never show up as scanned files even when
+    // the folder lies inside the tree.
+    // There is one per root, algorithm and chunking, so switching either (or writing a manifest, which
+    // never chunks) does not throw the other away. Unchunked indexes keep their original names.
+    static Path locationFor(File root, ScanOptions options) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        String key = root.getAbsolutePath() + "\0" + options.getAlgorithm();
+        if (!options.getChunkSpec().isEmpty()) key += "\0" + options.getChunkSpec();
+        byte[] h = md.digest(key.getBytes(StandardCharsets.UTF_8));
+        return Paths.get(options.getIndexDir(), Hex.encode(h, 0, 8) + ".idx");
+    }
+
+    // Returns null when there is no usable index for this root (any root when expectedRoot is null),
+    // so callers simply rehash everything.
+    static HashIndex load(Path file, String expectedRoot) {
+        if (!Files.isRegularFile(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 20))) {
+            if (in.readInt() != MAGIC) return null;
+            int version = in.readInt();
+            if (version < 2 || version > VERSION) return null;
+            String root = in.readUTF();
+            String algorithm = in.readUTF();
+            if (expectedRoot != null && !root.equals(expectedRoot)) return null;
+            String chunkSpec = version >= 4 ? in.readUTF() : "";
+            int digestLength = in.readUnsignedByte();
+            int count = in.readInt();
+            DigestTable table = new DigestTable(algorithm, digestLength, chunkSpec);
+            String prev = "";
+            byte[] buf = new byte[256];
+            byte[] digest = new byte[digestLength];
+            for (int i = 0; i < count; i++) {
+                int shared = (int) readVarLong(in);
+                int len = (int) readVarLong(in);
+                if (buf.length < len) buf = new byte[Math.max(len, buf.length * 2)];
+                in.readFully(buf, 0, len);
+                String path = prev.substring(0, shared) + new String(buf, 0, len, StandardCharsets.UTF_8);
+                long size = readVarLong(in);
+                long modified = in.readLong();
+                long fileKey = in.readLong();
+                in.readFully(digest);
+                table.setDigest(table.add(path, size, modified, fileKey), digest);
+                prev = path;
+            }
+            if (version == 2) return new HashIndex(root, table);
+            int dirCount = in.readInt();
+            MerkleTree merkle = new MerkleTree(digestLength);
+            prev = "";
+            for (int d = 0; d < dirCount; d++) {
+                int shared = (int) readVarLong(in);
+                int len = (int) readVarLong(in);
+                if (buf.length < len) buf = new byte[Math.max(len, buf.length * 2)];
+                in.readFully(buf, 0, len);
+                String dir = prev.substring(0, shared) + new String(buf, 0, len, StandardCharsets.UTF_8);
+                int firstRow = (int) readVarLong(in);
+                int endRow = firstRow + (int) readVarLong(in);
+                in.readFully(digest);
+                merkle.setDir(merkle.addDir(dir, firstRow), endRow, digest);
+                prev = dir;
+            }
+            int chunked = version >= 4 ? in.readInt() : 0;
+            for (int c = 0; c < chunked; c++) {
+                int row = (int) readVarLong(in);
+                int n = (int) readVarLong(in);
+                long[] ends = new long[n];
+                byte[] digests = new byte[n * digestLength];
+                long end = 0;
+                for (int i = 0; i < n; i++) {
+                    end += readVarLong(in);
+                    ends[i] = end;
+                    in.readFully(digests, i * digestLength, digestLength);
+                }
+                table.setChunks(row, new FileChunks(ends, digests, digestLength));
+            }
+            return new HashIndex(root, table, merkle);
+        } catch (IOException | RuntimeException e) {
+            return null; // a truncated or foreign file is treated as "no index"
+        }
+    }
+
+    void save(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 20))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(root);
+                out.writeUTF(table.algorithm());
+                out.writeUTF(table.chunkSpec());
+                out.writeByte(table.digestLength());
+                out.writeInt(table.size());
+                String prev = "";
+                for (int row = 0; row < table.size(); row++) {
+                    String path = table.path(row);
+                    int shared = sharedPrefix(prev, path);
+                    byte[] suffix = path.substring(shared).getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, shared);
+                    writeVarLong(out, suffix.length);
+                    out.write(suffix);
+                    writeVarLong(out, table.fileSize(row));
+                    out.writeLong(table.modified(row));
+                    out.writeLong(table.fileKey(row));
+                    out.write(table.digest(row));
+                    prev = path;
+                }
+                MerkleTree merkle = getMerkle();
+                out.writeInt(merkle.size());
+                prev = "";
+                for (int d = 0; d < merkle.size(); d++) {
+                    String folder = merkle.dir(d);
+                    int shared = sharedPrefix(prev, folder);
+                    byte[] suffix = folder.substring(shared).getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, shared);
+                    writeVarLong(out, suffix.length);
+                    out.write(suffix);
+                    writeVarLong(out, merkle.firstRow(d));
+                    writeVarLong(out, merkle.endRow(d) - merkle.firstRow(d));
+                    out.write(merkle.digest(d));
+                    prev = folder;
+                }
+                int[] chunked = table.chunkedRows();
+                out.writeInt(chunked.length);
+                for (int row : chunked) {
+                    FileChunks c = table.chunks(row);
+                    writeVarLong(out, row);
+                    writeVarLong(out, c.count());
+                    for (int i = 0; i < c.count(); i++) {
+                        writeVarLong(out, c.end(i) - c.start(i));
+                        out.write(c.digest(i));
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        // never split a surrogate pair, the suffix has to be valid on its own
+        if (i > 0 && Character.isHighSurrogate(b.charAt(i - 1))) i--;
+        return i;
+    }
+
+    private static void writeVarLong(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint in index");
+    }
+}
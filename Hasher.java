@@ -0,0 +1,22 @@
+import java.nio.ByteBuffer;
+
+// A digest algorithm that can be selected per run. Implementations are stateless factories;
+// each file gets its own State.
+interface Hasher {
+
+    interface State {
+        // Consumes the buffer's remaining bytes.
+        void update(ByteBuffer data);
+
+        byte[] digest();
+    }
+
+    String name();
+
+    int digestLength();
+
+    // False for checksums that only catch accidental change, not deliberate tampering.
+    boolean isCryptographic();
+
+    State newState();
+}
@@ -0,0 +1,181 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+// Registry of selectable digest algorithms: every MessageDigest the JDK offers (SHA-256, SHA-512,
+// SHA-512/256, SHA3-256, ...) plus fast non-cryptographic checksums for change detection.
+final class Hashers {
+
+    static final String DEFAULT = "SHA-256";
+
+    private static final ConcurrentHashMap<String, Hasher> CACHE = new ConcurrentHashMap<>();
+
+    private Hashers() {}
+
+    static Hasher forName(String name) {
+        String key = name.trim().toUpperCase(Locale.ROOT);
+        Hasher cached = CACHE.get(key);
+        if (cached != null) return cached;
+        Hasher hasher;
+        switch (key) {
+            case "XXH64": hasher = new Fast("XXH64", 8, XxHash64::new); break;
+            case "CRC32": hasher = new Fast("CRC32", 4, () -> new ChecksumState(new CRC32())); break;
+            case "CRC32C": hasher = new Fast("CRC32C", 4, Crc32c::newState); break;
+            default:
+                try {
+                    hasher = new Jdk(key, MessageDigest.getInstance(key).getDigestLength());
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalArgumentException("Unknown digest algorithm: " + name);
+                }
+        }
+        CACHE.putIfAbsent(key, hasher);
+        return hasher;
+    }
+
+    // Algorithm names offered in the UI and the CLI help, cryptographic ones first.
+    static List<String> available() {
+        List<String> names = new ArrayList<>();
+        for (String n : new String[]{"SHA-256", "SHA-512", "SHA-512/256", "SHA3-256", "SHA3-512", "SHA-1", "MD5"}) {
+            if (Security.getAlgorithms("MessageDigest").contains(n)) names.add(n);
+        }
+        names.add("XXH64");
+        names.add("CRC32C");
+        names.add("CRC32");
+        return names;
+    }
+
+    // Shown when a baseline is about to rest on an algorithm that only catches accidental change;
+    // null for cryptographic ones.
+    static String tamperWarning(String algorithm) {
+        if (forName(algorithm).isCryptographic()) return null;
+        return algorithm + " catches accidental corruption but not deliberate tampering; use SHA-256 or stronger for integrity baselines";
+    }
+
+    private static final class Jdk implements Hasher {
+        private final String name;
+        private final int length;
+
+        Jdk(String name, int length) {
+            this.name = name;
+            this.length = length;
+        }
+
+        @Override public String name() { return name; }
+        @Override public int digestLength() { return length; }
+        @Override public boolean isCryptographic() { return !name.equals("MD5") && !name.equals("SHA-1") && !name.equals("MD2"); }
+
+        @Override
+        public State newState() {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance(name);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // was available when this Hasher was created
+            }
+            return new State() {
+                @Override public void update(ByteBuffer data) { md.update(data); }
+                @Override public byte[] digest() { return md.digest(); }
+            };
+        }
+    }
+
+    private static final class Fast implements Hasher {
+        private final String name;
+        private final int length;
+        private final Supplier<State> factory;
+
+        Fast(String name, int length, Supplier<State> factory) {
+            this.name = name;
+            this.length = length;
+            this.factory = factory;
+        }
+
+        @Override public String name() { return name; }
+        @Override public int digestLength() { return length; }
+        @Override public boolean isCryptographic() { return false; }
+        @Override public State newState() { return factory.get(); }
+    }
+
+    private static final class ChecksumState implements Hasher.State {
+        private final CRC32 crc;
+
+        ChecksumState(CRC32 crc) { this.crc = crc; }
+
+        @Override public void update(ByteBuffer data) { crc.update(data); }
+
+        @Override
+        public byte[] digest() {
+            return ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+        }
+    }
+
+    // java.util.zip.CRC32C (JDK 9+, hardware accelerated) when present; a table-driven
+    // implementation otherwise, so the tool still runs on JDK 8.
+    private static final class Crc32c implements Hasher.State {
+        private static final Supplier<Checksum> JDK;
+        private static final MethodHandle UPDATE;
+        private static final int[] TABLE = new int[256];
+
+        static {
+            Supplier<Checksum> jdk = null;
+            MethodHandle update = null;
+            try {
+                Class<?> c = Class.forName("java.util.zip.CRC32C");
+                MethodHandle ctor = MethodHandles.publicLookup().findConstructor(c, MethodType.methodType(void.class));
+                update = MethodHandles.publicLookup().findVirtual(c, "update", MethodType.methodType(void.class, ByteBuffer.class));
+                jdk = () -> {
+                    try {
+                        return (Checksum) ctor.invoke();
+                    } catch (Throwable t) {
+                        throw new IllegalStateException(t);
+                    }
+                };
+            } catch (ReflectiveOperationException e) {
+                for (int i = 0; i < 256; i++) {
+                    int r = i;
+                    for (int k = 0; k < 8; k++) r = (r >>> 1) ^ (0x82F63B78 & -(r & 1));
+                    TABLE[i] = r;
+                }
+            }
+            JDK = jdk;
+            UPDATE = update;
+        }
+
+        private final Checksum jdk = JDK == null ? null : JDK.get();
+        private int crc = 0xFFFFFFFF;
+
+        static Hasher.State newState() { return new Crc32c(); }
+
+        @Override
+        public void update(ByteBuffer data) {
+            if (jdk != null) {
+                try {
+                    UPDATE.invoke(jdk, data);
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+                return;
+            }
+            int c = crc;
+            while (data.hasRemaining()) c = (c >>> 8) ^ TABLE[(c ^ data.get()) & 0xFF];
+            crc = c;
+        }
+
+        @Override
+        public byte[] digest() {
+            int value = jdk != null ? (int) jdk.getValue() : ~crc;
+            return ByteBuffer.allocate(4).putInt(value).array();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+// Table-driven hex conversion. Digests stay binary everywhere else; text is only produced here,
+// at the edge where results are shown, written to a report, or parsed from one.
+final class Hex {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toUpperCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private Hex() {}
+
+    static String encode(byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    static String encode(byte[] bytes, int offset, int length) {
+        char[] out = new char[length * 2];
+        for (int i = 0, j = 0; i < length; i++) {
+            int v = bytes[offset + i];
+            out[j++] = DIGITS[(v >>> 4) & 0xF];
+            out[j++] = DIGITS[v & 0xF];
+        }
+        return new String(out);
+    }
+
+    static byte[] decode(CharSequence hex) {
+        if ((hex.length() & 1) != 0) throw new IllegalArgumentException("Odd-length hex string");
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int hi = value(hex.charAt(2 * i)), lo = value(hex.charAt(2 * i + 1));
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+
+    private static int value(char c) {
+        int v = c < 128 ? VALUES[c] : -1;
+        if (v < 0) throw new IllegalArgumentException("Not a hex digit: " + c);
+        return v;
+    }
+}
@@ -0,0 +1,568 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+// Comparison history as an append-only log split into numbered segments (seg-000001.log, ...).
+// Every record is length-prefixed and checksummed, so a torn last write is dropped on open.
+// Deleting appends a tombstone; once a quarter of a sealed segment is dead a background thread
+// rewrites it without the dead records. Sealed segments carry a small .idx file (id, time, offset,
+// path hashes per record), so opening a long history reads the indexes, not the records.
+final class HistoryStore implements Closeable {
+
+    static final class Entry {
+        final long id;
+        final long time;
+        final String mode;
+        final String path1;
+        final String path2;
+        final String result;
+
+        Entry(long id, long time, String mode, String path1, String path2, String result) {
+            this.id = id;
+            this.time = time;
+            this.mode = mode;
+            this.path1 = path1;
+            this.path2 = path2;
+            this.result = result;
+        }
+    }
+
+    private static final int MAGIC = 0x46495348; // "FISH"
+    private static final byte ENTRY = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final DateTimeFormatter LEGACY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<Integer> segments = new ArrayList<>(); // ascending; the last one is appended to
+    private final Map<Integer, List<Long>> tombstones = new HashMap<>(); // segment -> ids it deletes
+    private FileChannel active;
+    private long activeSize;
+
+    // Index of every entry still on disk, in id order (ids and times only ever grow)
+    private long[] ids = new long[256];
+    private long[] times = new long[256];
+    private long[] offsets = new long[256];
+    private long[] keys1 = new long[256];
+    private long[] keys2 = new long[256];
+    private int[] segs = new int[256];
+    private int count;
+    private final BitSet dead = new BitSet();
+    private long nextId = 1;
+    private long lastTime;
+    private boolean compactionQueued;
+
+    private HistoryStore(Path dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    static HistoryStore open(File dir) throws IOException {
+        HistoryStore store = new HistoryStore(dir.toPath(), Long.getLong("fis.historySegmentBytes", 1 << 20));
+        store.load();
+        return store;
+    }
+
+    synchronized int size() { return count - dead.cardinality(); }
+
+    synchronized long append(String mode, String path1, String path2, String result) throws IOException {
+        return append(System.currentTimeMillis(), mode, path1, path2, result);
+    }
+
+    private long append(long time, String mode, String path1, String path2, String result) throws IOException {
+        time = Math.max(time, lastTime); // keep times sorted so range queries can binary-search
+        long id = nextId++;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ENTRY);
+        out.writeLong(id);
+        out.writeLong(time);
+        out.writeUTF(mode);
+        out.writeUTF(path1);
+        out.writeUTF(path2);
+        out.writeUTF(result);
+        long offset = write(bytes.toByteArray());
+        addToIndex(id, time, offset, pathKey(path1), pathKey(path2), segments.get(segments.size() - 1));
+        lastTime = time;
+        rollIfFull();
+        return id;
+    }
+
+    synchronized void delete(long id) throws IOException {
+        int pos = position(id);
+        if (pos < 0 || dead.get(pos)) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TOMBSTONE);
+        out.writeLong(id);
+        out.writeLong(System.currentTimeMillis());
+        write(bytes.toByteArray());
+        dead.set(pos);
+        tombstones.computeIfAbsent(segments.get(segments.size() - 1), k -> new ArrayList<>()).add(id);
+        rollIfFull();
+        scheduleCompaction();
+    }
+
+    synchronized void deleteAll() throws IOException {
+        active.close();
+        for (int seg : segments) {
+            Files.deleteIfExists(logFile(seg));
+            Files.deleteIfExists(indexFile(seg));
+        }
+        segments.clear();
+        tombstones.clear();
+        count = 0;
+        dead.clear();
+        nextId = 1;
+        openSegment(1);
+    }
+
+    // Ids of live entries with from <= time <= to, newest first; path (if given) must equal either
+    // side of the comparison. Paths are matched by 64-bit hash, so a collision is possible but negligible.
+    synchronized long[] query(long from, long to, String path) {
+        int lo = lowerBound(from);
+        int hi = lowerBound(to == Long.MAX_VALUE ? to : to + 1);
+        long key = path == null || path.isEmpty() ? 0 : pathKey(path);
+        long[] result = new long[hi - lo];
+        int n = 0;
+        for (int i = hi - 1; i >= lo; i--) {
+            if (dead.get(i)) continue;
+            if (key != 0 && keys1[i] != key && keys2[i] != key) continue;
+            result[n++] = ids[i];
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // Reads ids[from, to); ids deleted since the query are skipped.
+    synchronized List<Entry> read(long[] queryIds, int from, int to) throws IOException {
+        List<Entry> entries = new ArrayList<>(Math.max(0, to - from));
+        Map<Integer, RandomAccessFile> files = new HashMap<>();
+        try {
+            for (int i = from; i < to; i++) {
+                int pos = position(queryIds[i]);
+                if (pos < 0 || dead.get(pos)) continue;
+                RandomAccessFile raf = files.get(segs[pos]);
+                if (raf == null) {
+                    raf = new RandomAccessFile(logFile(segs[pos]).toFile(), "r");
+                    files.put(segs[pos], raf);
+                }
+                raf.seek(offsets[pos]);
+                byte[] payload = new byte[raf.readInt()];
+                raf.readInt(); // checksum, verified when the segment was loaded
+                raf.readFully(payload);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                in.readByte();
+                entries.add(new Entry(in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+        } finally {
+            for (RandomAccessFile raf : files.values()) raf.close();
+        }
+        return entries;
+    }
+
+    // One-time import of the old pipe-delimited history.txt; the file is renamed once imported.
+    synchronized int migrate(File legacy) throws IOException {
+        if (!legacy.isFile() || count > 0) return 0;
+        int imported = 0;
+        for (String line : Files.readAllLines(legacy.toPath(), StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\\|", 5);
+            if (parts.length != 5) continue;
+            long time;
+            try {
+                time = LocalDateTime.parse(parts[0], LEGACY_TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (RuntimeException e) {
+                time = legacy.lastModified();
+            }
+            append(time, parts[1], parts[2], parts[3], parts[4]);
+            imported++;
+        }
+        Files.move(legacy.toPath(), new File(legacy.getPath() + ".migrated").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return imported;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compactor.shutdownNow();
+        active.close();
+    }
+
+    // ---- loading ----
+
+    private void load() throws IOException {
+        Files.createDirectories(dir);
+        List<Integer> found = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "seg-*.log")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    found.add(Integer.parseInt(name.substring(4, name.length() - 4)));
+                } catch (NumberFormatException ignored) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(found);
+        for (int i = 0; i < found.size(); i++) {
+            int seg = found.get(i);
+            boolean last = i == found.size() - 1;
+            segments.add(seg);
+            if (last || !loadIndex(seg)) {
+                long valid = scanLog(seg);
+                if (last) {
+                    try (FileChannel ch = FileChannel.open(logFile(seg), StandardOpenOption.WRITE)) {
+                        ch.truncate(valid); // drop a torn tail so new records follow a good one
+                    }
+                } else {
+                    writeIndex(seg);
+                }
+            }
+        }
+        // tombstones are applied after everything is indexed: they may target any older segment
+        for (List<Long> targets : tombstones.values()) {
+            for (long id : targets) {
+                int pos = position(id);
+                if (pos >= 0) dead.set(pos);
+            }
+        }
+        if (count > 0) {
+            nextId = ids[count - 1] + 1;
+            lastTime = times[count - 1];
+        }
+        if (segments.isEmpty()) {
+            openSegment(1);
+        } else {
+            int seg = segments.remove(segments.size() - 1);
+            openSegment(seg);
+        }
+        scheduleCompaction();
+    }
+
+    private boolean loadIndex(int seg) {
+        Path idx = indexFile(seg);
+        if (!Files.isRegularFile(idx)) return false;
+        int mark = count;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(idx), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readLong() != Files.size(logFile(seg))) return false;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                long time = in.readLong();
+                long offset = in.readLong();
+                long k1 = in.readLong();
+                long k2 = in.readLong();
+                if (type == TOMBSTONE) tombstones.computeIfAbsent(seg, k -> new ArrayList<>()).add(id);
+                else addToIndex(id, time, offset, k1, k2, seg);
+            }
+            return true;
+        } catch (IOException e) {
+            count = mark; // fall back to scanning the log
+            tombstones.remove(seg);
+            return false;
+        }
+    }
+
+    // Indexes every intact record of a segment and returns the length of its valid prefix.
+    private long scanLog(int seg) throws IOException {
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile(seg)), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int len, expected;
+                byte[] payload;
+                try {
+                    len = in.readInt();
+                    if (len <= 0 || len > (1 << 20)) break;
+                    expected = in.readInt();
+                    payload = new byte[len];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break; // torn tail
+                }
+                crc.reset();
+                crc.update(payload, 0, len);
+                if ((int) crc.getValue() != expected) break;
+                DataInputStream rec = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = rec.readByte();
+                long id = rec.readLong();
+                long time = rec.readLong();
+                if (type == TOMBSTONE) {
+                    tombstones.computeIfAbsent(seg, k -> new ArrayList<>()).add(id);
+                } else {
+                    rec.readUTF();
+                    long k1 = pathKey(rec.readUTF());
+                    long k2 = pathKey(rec.readUTF());
+                    addToIndex(id, time, offset, k1, k2, seg);
+                }
+                offset += 8 + len;
+            }
+        }
+        return offset;
+    }
+
+    private void writeIndex(int seg) throws IOException {
+        Path idx = indexFile(seg);
+        Path tmp = Files.createTempFile(dir, idx.getFileName().toString(), ".tmp");
+        try {
+            List<Long> segTombstones = tombstones.getOrDefault(seg, Collections.<Long>emptyList());
+            int from = firstPosition(seg), to = endPosition(seg);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeLong(Files.size(logFile(seg)));
+                out.writeInt(to - from + segTombstones.size());
+                for (int i = from; i < to; i++) {
+                    out.writeByte(ENTRY);
+                    out.writeLong(ids[i]);
+                    out.writeLong(times[i]);
+                    out.writeLong(offsets[i]);
+                    out.writeLong(keys1[i]);
+                    out.writeLong(keys2[i]);
+                }
+                for (long id : segTombstones) {
+                    out.writeByte(TOMBSTONE);
+                    out.writeLong(id);
+                    out.writeLong(0);
+                    out.writeLong(0);
+                    out.writeLong(0);
+                    out.writeLong(0);
+                }
+            }
+            Files.move(tmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // ---- appending ----
+
+    private long write(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buf = ByteBuffer.allocate(8 + payload.length);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        long offset = activeSize;
+        while (buf.hasRemaining()) active.write(buf);
+        activeSize += 8 + payload.length;
+        return offset;
+    }
+
+    private void openSegment(int seg) throws IOException {
+        segments.add(seg);
+        active = FileChannel.open(logFile(seg), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeSize = active.size();
+    }
+
+    private void rollIfFull() throws IOException {
+        if (activeSize < segmentBytes) return;
+        int seg = segments.get(segments.size() - 1);
+        active.close();
+        writeIndex(seg);
+        openSegment(seg + 1);
+        scheduleCompaction();
+    }
+
+    // ---- compaction ----
+
+    private void scheduleCompaction() {
+        if (compactionQueued || compactor.isShutdown()) return;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (needsCompaction(segments.get(i))) {
+                compactionQueued = true;
+                compactor.execute(this::compact);
+                return;
+            }
+        }
+    }
+
+    private boolean needsCompaction(int seg) {
+        int from = firstPosition(seg), to = endPosition(seg);
+        int deadCount = dead.get(from, to).cardinality();
+        if (deadCount > 0 && deadCount * 4 >= to - from) return true;
+        // tombstones whose target has already been compacted away
+        for (long id : tombstones.getOrDefault(seg, Collections.<Long>emptyList())) {
+            if (position(id) < 0) return true;
+        }
+        return false;
+    }
+
+    private synchronized void compact() {
+        compactionQueued = false;
+        try {
+            for (int i = 0; i < segments.size() - 1; i++) {
+                int seg = segments.get(i);
+                if (!needsCompaction(seg)) continue;
+                if (rewrite(seg)) i--; // the segment disappeared
+            }
+        } catch (IOException e) {
+            // leave the segment as it is; the next delete or restart tries again
+        }
+    }
+
+    // Copies a sealed segment's live records and still-needed tombstones into a fresh file.
+    private boolean rewrite(int seg) throws IOException {
+        int from = firstPosition(seg), to = endPosition(seg);
+        List<Long> keptTombstones = new ArrayList<>();
+        for (long id : tombstones.getOrDefault(seg, Collections.<Long>emptyList())) {
+            int pos = position(id);
+            if (pos >= 0 && segs[pos] != seg) keptTombstones.add(id);
+        }
+        Path log = logFile(seg);
+        Path tmp = Files.createTempFile(dir, log.getFileName().toString(), ".tmp");
+        long[] newOffsets = new long[to - from];
+        try {
+            try (RandomAccessFile src = new RandomAccessFile(log.toFile(), "r");
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                long offset = 0;
+                for (int i = from; i < to; i++) {
+                    if (dead.get(i)) continue;
+                    src.seek(offsets[i]);
+                    byte[] record = new byte[8 + src.readInt()];
+                    src.seek(offsets[i]);
+                    src.readFully(record);
+                    out.write(record);
+                    newOffsets[i - from] = offset;
+                    offset += record.length;
+                }
+                for (long id : keptTombstones) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+                    DataOutputStream rec = new DataOutputStream(bytes);
+                    rec.writeByte(TOMBSTONE);
+                    rec.writeLong(id);
+                    rec.writeLong(0);
+                    byte[] payload = bytes.toByteArray();
+                    CRC32 crc = new CRC32();
+                    crc.update(payload, 0, payload.length);
+                    out.writeInt(payload.length);
+                    out.writeInt((int) crc.getValue());
+                    out.write(payload);
+                }
+            }
+            Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        // drop the dead rows of this segment from the in-memory index
+        BitSet stillDead = dead.get(0, from);
+        int w = from;
+        for (int r = from; r < count; r++) {
+            if (r < to && dead.get(r)) continue;
+            if (dead.get(r)) stillDead.set(w);
+            ids[w] = ids[r];
+            times[w] = times[r];
+            offsets[w] = r < to ? newOffsets[r - from] : offsets[r];
+            keys1[w] = keys1[r];
+            keys2[w] = keys2[r];
+            segs[w] = segs[r];
+            w++;
+        }
+        count = w;
+        dead.clear();
+        dead.or(stillDead);
+        if (keptTombstones.isEmpty()) tombstones.remove(seg);
+        else tombstones.put(seg, keptTombstones);
+
+        if (firstPosition(seg) == endPosition(seg) && keptTombstones.isEmpty()) {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(indexFile(seg));
+            segments.remove(Integer.valueOf(seg));
+            return true;
+        }
+        writeIndex(seg);
+        return false;
+    }
+
+    // ---- index helpers ----
+
+    private void addToIndex(long id, long time, long offset, long k1, long k2, int seg) {
+        if (count == ids.length) {
+            int n = count * 2;
+            ids = Arrays.copyOf(ids, n);
+            times = Arrays.copyOf(times, n);
+            offsets = Arrays.copyOf(offsets, n);
+            keys1 = Arrays.copyOf(keys1, n);
+            keys2 = Arrays.copyOf(keys2, n);
+            segs = Arrays.copyOf(segs, n);
+        }
+        ids[count] = id;
+        times[count] = time;
+        offsets[count] = offset;
+        keys1[count] = k1;
+        keys2[count] = k2;
+        segs[count] = seg;
+        count++;
+    }
+
+    private int position(long id) {
+        int pos = Arrays.binarySearch(ids, 0, count, id);
+        return pos >= 0 ? pos : -1;
+    }
+
+    private int lowerBound(long time) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // A segment's entries are contiguous in the index because ids grow from segment to segment.
+    private int firstPosition(int seg) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segs[mid] < seg) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int endPosition(int seg) {
+        return firstPosition(seg + 1);
+    }
+
+    private Path logFile(int seg) { return dir.resolve(String.format("seg-%06d.log", seg)); }
+
+    private Path indexFile(int seg) { return dir.resolve(String.format("seg-%06d.idx", seg)); }
+
+    private static long pathKey(String path) {
+        return FileRecord.keyOf(path);
+    }
+}
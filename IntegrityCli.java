@@ -0,0 +1,400 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+// Headless entry point for build agents and cron: `java IntegrityCli <command> [options]`.
+// It drives the same engine as the GUI but never touches AWT, and streams one record per line.
+// Exit code: 0 when everything matches, otherwise a bitmask of Modified(1) | Missing(2) | Extra(4);
+// 64 for a usage error, 70 when the scan itself failed.
+public final class IntegrityCli {
+
+    static final int EXIT_USAGE = 64;
+    static final int EXIT_ERROR = 70;
+
+    private static final String USAGE =
+            "Usage: java IntegrityCli <command> [options]\n"
+            + "Commands:\n"
+            + "  hash <file|folder>          print the digest of a file or of every file in a folder\n"
+            + "  compare <path1> <path2>     compare two files or two folders\n"
+            + "  verify <folder>             re-read a folder and check it against its stored hash index\n"
+            + "  watch <folder>              report changes against the stored index as they happen\n"
+            + "  manifest <folder> <file|->  write a sha256sum-style checksum manifest (binary index if FILE ends in .idx)\n"
+            + "  check <manifest> [folder]   verify the files listed in a manifest (default folder: the manifest's)\n"
+            + "Options:\n"
+            + "  --format jsonl|csv|html     output format (default: from --output's extension, else jsonl)\n"
+            + "  --output FILE               write the report to FILE instead of stdout\n"
+            + "  --gzip                      gzip the report (implied by an --output name ending in .gz)\n"
+            + "  --algorithm NAME            digest algorithm (default: SHA-256), one of\n"
+            + "                              " + String.join(", ", Hashers.available()) + "\n"
+            + "  --threads N                 files hashed concurrently (default: CPU cores)\n"
+            + "  --force-rehash              ignore the stored index and read every file\n"
+            + "  --no-index                  neither read nor update the stored index\n"
+            + "  --index-dir DIR             where hash indexes are kept (default: .fis-index)\n"
+            + "  --include GLOB              only files matching GLOB (repeatable; '/' in GLOB matches the relative path)\n"
+            + "  --exclude GLOB              skip files and folders matching GLOB, e.g. .git or build/** (repeatable)\n"
+            + "  --links follow|files|skip   symbolic links: follow all (default), follow file links only, or skip\n"
+            + "  --stream                    walk and merge in path order with bounded memory (no index)\n"
+            + "  --fast                      compare: decide by size and head/tail samples before full hashes\n"
+            + "  --chunking off|fixed|cdc    hash large files in chunks: parallel within a file, and compare\n"
+            + "                              reports which byte ranges of a Modified file differ\n"
+            + "  --chunk-size BYTES          (target) chunk size, a power of two (default: 4 MiB)\n"
+            + "  --changes-only              compare/verify/check: report only changed paths; Same files are just counted\n"
+            + "  --max-failures N            check: stop after N Modified or Missing files\n"
+            + "  --io-rate BYTES             cap hashing reads at BYTES per second (default: unlimited)\n"
+            + "  --io-ops N                  cap hashing at N read requests (opens and buffer reads) per second\n"
+            + "  --io-per-device N           at most N concurrent reads per device (default: --threads)\n"
+            + "  --direct-io                 read around the page cache (O_DIRECT, JDK 10+) where supported\n"
+            + "  --shards N                  split folder scans into N shards, each checkpointed so an interrupted\n"
+            + "                              scan resumes where it stopped (default: 1, no sharding)\n"
+            + "  --shard-by names|hash       shard by runs of the folder's entries (default) or by path hash\n"
+            + "  --shard-workers N           shards scanned at once (default: up to --threads)\n"
+            + "  --shard-transport T         local (threads, default), process (a JVM per shard) or a class name\n"
+            + "  --metrics FILE|-            write stage timings, counters and hash latencies as JSON when done\n"
+            + "                              ('-' for stderr); -Dfis.jmx=true also publishes them over JMX\n";
+
+    // shard-worker is how ShardTransport.Processes runs one shard: shard-worker <folder> <index file> --shard SPEC
+    private static final List<String> COMMANDS = Arrays.asList("hash", "compare", "verify", "watch", "manifest", "check", "shard-worker");
+
+    private final ScanOptions options = new ScanOptions();
+    private ReportWriter.Format format;
+    private String output;
+    private boolean gzip;
+    private String metricsOutput;
+    private final List<String> operands = new ArrayList<>();
+    private final CountDownLatch watchStopped = new CountDownLatch(1);
+    private volatile IOException watchFailure;
+
+    private IntegrityCli() {}
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        IntegrityCli cli = new IntegrityCli();
+        String command;
+        try {
+            command = cli.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        }
+        String warning = Hashers.tamperWarning(cli.options.getAlgorithm());
+        if (warning != null && !"shard-worker".equals(command)) System.err.println("Warning: " + warning);
+        ScanMetrics metrics = cli.metricsOutput != null || Boolean.getBoolean("fis.jmx") ? new ScanMetrics() : null;
+        if (metrics != null) {
+            cli.options.metrics(metrics);
+            if (Boolean.getBoolean("fis.jmx")) metrics.publish();
+        }
+        ReportWriter out = null;
+        try {
+            out = cli.openReport();
+            out.metrics(metrics);
+            int code;
+            switch (command) {
+                case "hash": code = cli.hash(out); break;
+                case "compare": code = cli.compare(out); break;
+                case "verify": code = cli.verify(out); break;
+                case "manifest": code = cli.manifest(); break;
+                case "check": code = cli.check(out); break;
+                case "shard-worker": code = cli.shardWorker(); break;
+                case "watch": code = cli.watch(out); break;
+                default: throw new IllegalStateException("Unhandled command: " + command);
+            }
+            out.close();
+            cli.writeMetrics();
+            return code;
+        } catch (IllegalArgumentException e) {
+            closeQuietly(out);
+            System.err.println(e.getMessage());
+            return EXIT_USAGE;
+        } catch (Exception e) {
+            closeQuietly(out);
+            System.err.println("Error: " + e.getMessage());
+            return EXIT_ERROR;
+        }
+    }
+
+    private String parse(String[] args) {
+        if (args.length == 0 || "--help".equals(args[0]) || "-h".equals(args[0])) {
+            throw new IllegalArgumentException("No command given");
+        }
+        if (!COMMANDS.contains(args[0])) throw new IllegalArgumentException("Unknown command: " + args[0]);
+        for (int i = 1; i < args.length; i++) {
+            String a = args[i];
+            switch (a) {
+                case "--format": format = ReportWriter.Format.forName(value(args, ++i, a)); break;
+                case "--output": output = value(args, ++i, a); break;
+                case "--gzip": gzip = true; break;
+                case "--algorithm": options.algorithm(value(args, ++i, a)); break;
+                case "--threads": options.parallelism(Integer.parseInt(value(args, ++i, a))); break;
+                case "--force-rehash": options.forceRehash(true); break;
+                case "--no-index": options.indexEnabled(false); break;
+                case "--index-dir": options.indexDir(value(args, ++i, a)); break;
+                case "--include": options.include(value(args, ++i, a)); break;
+                case "--exclude": options.exclude(value(args, ++i, a)); break;
+                case "--links": options.linkPolicy(ScanOptions.LinkPolicy.forName(value(args, ++i, a))); break;
+                case "--stream": options.streaming(true); break;
+                case "--fast": options.fastCompare(true); break;
+                case "--chunking": options.chunking(ScanOptions.Chunking.forName(value(args, ++i, a))); break;
+                case "--chunk-size": options.chunkSize(Integer.parseInt(value(args, ++i, a))); break;
+                case "--changes-only": options.changesOnly(true); break;
+                case "--max-failures": options.maxFailures(Integer.parseInt(value(args, ++i, a))); break;
+                case "--io-rate": options.ioLimits(Long.parseLong(value(args, ++i, a)), options.getIoOpsPerSecond()); break;
+                case "--io-ops": options.ioLimits(options.getIoBytesPerSecond(), Long.parseLong(value(args, ++i, a))); break;
+                case "--io-per-device": options.ioPerDevice(Integer.parseInt(value(args, ++i, a))); break;
+                case "--direct-io": options.directIo(true); break;
+                case "--shards": options.shards(Integer.parseInt(value(args, ++i, a))); break;
+                case "--shard-by": options.shardBy(ScanShard.Kind.forName(value(args, ++i, a))); break;
+                case "--shard-workers": options.shardWorkers(Integer.parseInt(value(args, ++i, a))); break;
+                case "--shard-transport": options.shardTransport(value(args, ++i, a)); break;
+                case "--shard": options.shard(ScanShard.decode(value(args, ++i, a))); break;
+                case "--metrics": metricsOutput = value(args, ++i, a); break;
+                default:
+                    if (a.startsWith("--")) throw new IllegalArgumentException("Unknown option: " + a);
+                    operands.add(a);
+            }
+        }
+        return args[0];
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    private ReportWriter openReport() throws IOException {
+        if (output == null) {
+            if (gzip) throw new IllegalArgumentException("--gzip needs --output");
+            return ReportWriter.create(format != null ? format : ReportWriter.Format.JSONL, System.out);
+        }
+        ReportWriter.Format f = format != null ? format : ReportWriter.Format.forFile(output);
+        return ReportWriter.create(Paths.get(output), f != null ? f : ReportWriter.Format.JSONL, gzip);
+    }
+
+    private void writeMetrics() throws IOException {
+        ScanMetrics metrics = options.getMetrics();
+        if (metrics == null || metricsOutput == null) return;
+        metrics.finish();
+        boolean toStderr = "-".equals(metricsOutput);
+        Writer w = toStderr ? new OutputStreamWriter(System.err, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(metricsOutput), StandardCharsets.UTF_8);
+        try {
+            metrics.writeJson(w);
+            w.write(System.lineSeparator());
+        } finally {
+            if (toStderr) w.flush();
+            else w.close();
+        }
+    }
+
+    private File operand(int i, int expected) {
+        if (operands.size() != expected) throw new IllegalArgumentException("Expected " + expected + " path(s), got " + operands.size());
+        File f = new File(operands.get(i));
+        if (!f.exists()) throw new IllegalArgumentException("No such file or folder: " + f);
+        return f;
+    }
+
+    private int hash(ReportWriter out) throws Exception {
+        File target = operand(0, 1);
+        String algorithm = options.getAlgorithm();
+        out.begin("Digests of " + target, "path", "algorithm", "size", "digest");
+        if (target.isFile()) {
+            String digest = FileHasher.hash(target.toPath(), algorithm, options);
+            out.row(target.getName(), algorithm, target.length(), digest);
+        } else if (options.isStreaming()) {
+            new StreamingScan(options).hashTree(target, (path, record) -> out.row(path, algorithm, record.size, Hex.encode(record.digest)));
+        } else {
+            HashEngine engine = new HashEngine(options);
+            HashIndex index = engine.scan(target);
+            reportWalk(engine);
+            DigestTable table = index.getTable();
+            for (int row = 0; row < table.size(); row++) {
+                out.row(table.path(row), algorithm, table.fileSize(row), table.hex(row));
+            }
+            out.summary("Root digest (" + algorithm + "): " + index.getRootDigest());
+            System.err.println("Root digest (" + algorithm + "): " + index.getRootDigest());
+        }
+        return 0;
+    }
+
+    private int compare(ReportWriter out) throws Exception {
+        File p1 = operand(0, 2);
+        File p2 = operand(1, 2);
+        out.begin("Comparison of " + p1 + " and " + p2, comparisonColumns());
+        ComparisonSink sink = out.statusSink();
+        if (p1.isFile() && p2.isFile() && options.isFastCompare()) {
+            IntegrityStatus status = new StagedComparison(options).compare(p1.toPath(), p1.length(), p2.toPath(), p2.length());
+            sink.accept(p1.getName(), status);
+            return status.exitBit;
+        }
+        if (p1.isFile() && p2.isFile() && options.isChunked(p1.length()) && options.isChunked(p2.length())) {
+            FileChunks c1 = ChunkedHasher.hash(p1.toPath(), options);
+            FileChunks c2 = ChunkedHasher.hash(p2.toPath(), options);
+            Hasher hasher = Hashers.forName(options.getAlgorithm());
+            boolean same = Arrays.equals(c1.fileDigest(hasher), c2.fileDigest(hasher));
+            if (same) sink.accept(p1.getName(), IntegrityStatus.SAME);
+            else sink.accept(p1.getName(), IntegrityStatus.MODIFIED,
+                    FileChunks.differingRanges(c1, c2, options.getChunking() == ScanOptions.Chunking.CDC));
+            return same ? 0 : IntegrityStatus.MODIFIED.exitBit;
+        }
+        if (p1.isFile() && p2.isFile()) {
+            String h1 = FileHasher.hash(p1.toPath(), options.getAlgorithm(), options);
+            String h2 = FileHasher.hash(p2.toPath(), options.getAlgorithm(), options);
+            IntegrityStatus status = h1.equals(h2) ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED;
+            sink.accept(p1.getName(), status);
+            return status.exitBit;
+        }
+        if (!p1.isDirectory() || !p2.isDirectory()) throw new IllegalArgumentException("Compare needs two files or two folders");
+        if (options.isStreaming() || options.isFastCompare()) {
+            StreamingScan scan = new StreamingScan(options);
+            ComparisonSummary summary = scan.compare(p1, p2, sink);
+            if (scan.getStagedComparison() != null) System.err.println("Fast compare: " + scan.getStagedComparison());
+            out.summary(summary.toString());
+            return summary.exitCode();
+        }
+        HashEngine engine = new HashEngine(options);
+        HashIndex i1 = engine.scan(p1);
+        HashIndex i2 = engine.scan(p2);
+        reportWalk(engine);
+        long started = System.nanoTime();
+        ComparisonSummary summary = FolderComparison.compare(i1, i2, sink, options.isChangesOnly());
+        if (options.getMetrics() != null) options.getMetrics().stage(ScanMetrics.Stage.COMPARISON, started);
+        out.summary(summary.toString());
+        return summary.exitCode();
+    }
+
+    private int verify(ReportWriter out) throws Exception {
+        File root = operand(0, 1);
+        if (!root.isDirectory()) throw new IllegalArgumentException("Verify needs a folder");
+        HashEngine engine = new HashEngine(options);
+        HashIndex baseline = HashIndex.load(HashIndex.locationFor(root, options), root.getAbsolutePath());
+        if (baseline == null) throw new IllegalArgumentException("No stored hash index for " + root + "; run 'hash' first");
+        FolderComparison.requireSameAlgorithm(baseline.getAlgorithm(), options.getAlgorithm());
+        FolderComparison.requireSameChunking(baseline.getTable().chunkSpec(), options.getChunkSpec());
+        // Read every byte again and leave the stored index untouched: it is the baseline
+        HashIndex current = engine.scan(root, null);
+        reportWalk(engine);
+        out.begin("Verification of " + root, comparisonColumns());
+        long started = System.nanoTime();
+        ComparisonSummary summary = FolderComparison.compare(baseline, current, out.statusSink(), options.isChangesOnly());
+        if (options.getMetrics() != null) options.getMetrics().stage(ScanMetrics.Stage.COMPARISON, started);
+        engine.discardCheckpoints(root); // the baseline comparison is done; the merged scan is not kept
+        out.summary(summary.toString());
+        return summary.exitCode();
+    }
+
+    // Always plain whole-file digests, so sha256sum -c and friends can read the result.
+    private int manifest() throws Exception {
+        if (operands.size() != 2) throw new IllegalArgumentException("Expected a folder and a manifest file (or -)");
+        File root = operand(0, 2);
+        if (!root.isDirectory()) throw new IllegalArgumentException("Manifest needs a folder");
+        HashEngine engine = new HashEngine(options.chunking(ScanOptions.Chunking.OFF));
+        HashIndex index = engine.scan(root);
+        reportWalk(engine);
+        String target = operands.get(1);
+        if ("-".equals(target)) ChecksumManifest.write(index, System.out);
+        else ChecksumManifest.write(index, Paths.get(target));
+        System.err.println(index.size() + " files, root digest (" + options.getAlgorithm() + "): " + index.getRootDigest());
+        return 0;
+    }
+
+    private int check(ReportWriter out) throws Exception {
+        if (operands.size() < 1 || operands.size() > 2) throw new IllegalArgumentException("Expected a manifest and optionally a folder");
+        File manifest = operand(0, operands.size());
+        File root = operands.size() == 2 ? operand(1, 2) : null;
+        if (root != null && !root.isDirectory()) throw new IllegalArgumentException("Check needs a folder");
+        out.begin("Check of " + (root != null ? root : "files") + " against " + manifest, "path", "status");
+        ChecksumManifest check = new ChecksumManifest(options);
+        ComparisonSummary summary = check.check(manifest.toPath(), root, out.statusSink());
+        if (check.getBadLines() > 0) System.err.println("Skipped " + check.getBadLines() + " improperly formatted line(s)");
+        String text = summary.toString();
+        if (check.isStoppedEarly()) {
+            text += " (stopped after " + options.getMaxFailures() + " failure(s))";
+            System.err.println("Stopped after " + options.getMaxFailures() + " failure(s); the rest of the manifest was not checked");
+        }
+        out.summary(text);
+        return summary.exitCode();
+    }
+
+    // One shard of a sharded scan, saved as a partial index for the coordinator to merge.
+    private int shardWorker() throws Exception {
+        if (options.getShard() == null) throw new IllegalArgumentException("shard-worker needs --shard");
+        if (operands.size() != 2) throw new IllegalArgumentException("Expected a folder and an index file");
+        File root = operand(0, 2);
+        Path checkpoint = Paths.get(operands.get(1));
+        HashEngine engine = new HashEngine(options);
+        HashIndex previous = null;
+        if (!options.isForceRehash()) {
+            // an index already at the checkpoint was left by an interrupted run of this shard
+            previous = HashIndex.load(checkpoint, root.getAbsolutePath());
+            if (previous == null || !engine.isCompatible(previous)) previous = engine.loadIndex(root);
+        }
+        engine.scan(root, previous).save(checkpoint);
+        reportWalk(engine);
+        return 0;
+    }
+
+    private int watch(ReportWriter out) throws Exception {
+        File root = operand(0, 1);
+        if (!root.isDirectory()) throw new IllegalArgumentException("Watch needs a folder");
+        HashEngine engine = new HashEngine(options);
+        HashIndex baseline = engine.loadIndex(root);
+        if (baseline == null || !baseline.getAlgorithm().equals(options.getAlgorithm())
+                || !baseline.getTable().chunkSpec().equals(options.getChunkSpec())) baseline = engine.scan(root);
+        out.begin("Changes in " + root, "path", "status");
+        out.flush();
+        IntegrityWatcher watcher = new IntegrityWatcher(root, baseline.getTable(), options, (path, status) -> {
+            synchronized (out) {
+                try {
+                    out.row(path, status.label);
+                    out.flush();
+                } catch (IOException e) {
+                    // nobody is listening any more; run() closes up on the main thread
+                    watchFailure = e;
+                    watchStopped.countDown();
+                }
+            }
+        });
+        watcher.start();
+        System.err.println("Watching " + root + " (" + baseline.size() + " files in baseline), Ctrl+C to stop");
+        try {
+            watchStopped.await();
+        } finally {
+            watcher.close();
+        }
+        System.err.println("Stopped watching, the report could not be written: " + watchFailure.getMessage());
+        return EXIT_ERROR;
+    }
+
+    // Chunked comparisons add the byte ranges that differ inside Modified files.
+    private String[] comparisonColumns() {
+        return options.getChunking() == ScanOptions.Chunking.OFF
+                ? new String[] { "path", "status" } : new String[] { "path", "status", "ranges" };
+    }
+
+    private static void reportWalk(HashEngine engine) {
+        for (String path : engine.getLinkLoops()) System.err.println("Skipped symbolic link loop: " + path);
+        if (engine.getResumedShards() > 0) System.err.println("Resumed " + engine.getResumedShards() + " shard(s) from checkpoints");
+    }
+
+    private static void closeQuietly(ReportWriter out) {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // the output is gone; nothing left to report to
+        }
+    }
+}
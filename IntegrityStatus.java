@@ -0,0 +1,18 @@
+// Outcome for one path when two trees (or two files) are compared.
+enum IntegrityStatus {
+    SAME("Same", 0),
+    MODIFIED("Modified", 1),
+    MISSING("Missing", 2),
+    EXTRA("Extra", 4);
+
+    final String label;
+    final int exitBit; // combined into the CLI exit code, so scripts can tell what kind of drift happened
+
+    IntegrityStatus(String label, int exitBit) {
+        this.label = label;
+        this.exitBit = exitBit;
+    }
+
+    @Override
+    public String toString() { return label; }
+}
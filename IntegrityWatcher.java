@@ -0,0 +1,209 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Real-time monitoring of one folder against a stored baseline. The event loop only records which
+// paths were touched; a debounce timer hands every path that has been quiet for the debounce window
+// to a background pool, which rehashes just that file and raises an alert when its status against
+// the baseline changes. A burst of writes to one file therefore costs a single rehash.
+//
+// When the OS drops events (OVERFLOW) the affected directory is rescanned instead: its subtree is
+// merge-joined with the matching baseline range, and only files whose metadata moved are rehashed.
+final class IntegrityWatcher implements Closeable {
+
+    interface AlertListener {
+        void alert(String path, IntegrityStatus status);
+    }
+
+    private final Path root;
+    private final DigestTable baseline;
+    private final ScanOptions options;
+    private final AlertListener listener;
+    private final PathFilter filter;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> touched = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> rescans = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, IntegrityStatus> reported = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService hashers;
+    private Thread eventLoop;
+    private volatile boolean closed;
+
+    IntegrityWatcher(File root, DigestTable baseline, ScanOptions options, AlertListener listener) throws IOException {
+        FolderComparison.requireSameAlgorithm(baseline.algorithm(), options.getAlgorithm());
+        FolderComparison.requireSameChunking(baseline.chunkSpec(), options.getChunkSpec());
+        this.root = root.toPath().toAbsolutePath();
+        this.baseline = baseline;
+        this.options = options;
+        this.listener = listener;
+        this.filter = PathFilter.of(options, this.root);
+        this.watcher = this.root.getFileSystem().newWatchService();
+        this.hashers = Executors.newFixedThreadPool(options.getParallelism());
+    }
+
+    void start() throws IOException {
+        registerTree(root);
+        eventLoop = new Thread(this::processEvents, "integrity-watch-" + root.getFileName());
+        eventLoop.setDaemon(true);
+        eventLoop.start();
+        long tick = Math.max(10, options.getWatchDebounceMillis() / 2);
+        scheduler.scheduleWithFixedDelay(this::flush, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        scheduler.shutdownNow();
+        hashers.shutdownNow();
+        watcher.close();
+    }
+
+    private void registerTree(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                if (!d.equals(root) && filter.isExcluded(d.getFileName(), relative(d))) return FileVisitResult.SKIP_SUBTREE;
+                keys.put(d.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Runs on its own thread and does nothing but bookkeeping, so it keeps up with event storms.
+    private void processEvents() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = keys.get(key);
+            long now = System.nanoTime();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (dir == null) break;
+                if (event.kind() == OVERFLOW) {
+                    rescans.put(relative(dir), now);
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerTree(child);
+                    } catch (IOException e) {
+                        // gone again already; the delete event will follow
+                    }
+                    rescans.put(relative(child), now); // files may have landed before we registered
+                } else {
+                    touched.put(relative(child), now);
+                }
+            }
+            if (!key.reset()) keys.remove(key);
+        }
+    }
+
+    // Hands every path that has been quiet for the debounce window to the hashing pool.
+    private void flush() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(options.getWatchDebounceMillis());
+        for (Map.Entry<String, Long> e : touched.entrySet()) {
+            if (e.getValue() <= cutoff && touched.remove(e.getKey(), e.getValue())) {
+                String rel = e.getKey();
+                hashers.execute(() -> evaluate(rel));
+            }
+        }
+        for (Map.Entry<String, Long> e : rescans.entrySet()) {
+            if (e.getValue() <= cutoff && rescans.remove(e.getKey(), e.getValue())) {
+                String rel = e.getKey();
+                hashers.execute(() -> rescan(rel));
+            }
+        }
+    }
+
+    private void evaluate(String rel) {
+        Path path = root.resolve(rel);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attrs.isDirectory()) {
+                rescan(rel);
+            } else if (attrs.isRegularFile()) {
+                if (!filter.acceptsFile(rel)) return; // outside the baseline's filters
+                int row = baseline.find(rel);
+                byte[] digest = FileHasher.digest(path, options.getAlgorithm(), options);
+                publish(rel, row < 0 ? IntegrityStatus.EXTRA
+                        : baseline.sameDigest(row, digest) ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED);
+            }
+        } catch (NoSuchFileException e) {
+            // deleted: the path itself, or everything the baseline had below it, is now missing
+            int row = baseline.find(rel);
+            if (row >= 0) publish(rel, IntegrityStatus.MISSING);
+            else reported.remove(rel);
+            String prefix = rel + File.separator;
+            for (int r = baseline.lowerBound(prefix); r < baseline.size(); r++) {
+                String p = baseline.path(r);
+                if (!p.startsWith(prefix)) break;
+                publish(p, IntegrityStatus.MISSING);
+            }
+        } catch (Exception e) {
+            // unreadable for now (locked, mid-rename); a later event will bring it back here
+        }
+    }
+
+    // Merge-joins the directory's current contents with the baseline rows below it.
+    private void rescan(String dirRel) {
+        if (filter.isExcludedPath(dirRel)) return;
+        String prefix = dirRel.isEmpty() ? "" : dirRel + File.separator;
+        int row = baseline.lowerBound(prefix);
+        try {
+            SortedTreeWalker walker = new SortedTreeWalker(root.resolve(dirRel).toFile(), options, dirRel);
+            SortedTreeWalker.WalkEntry entry = walker.next();
+            while (entry != null || (row < baseline.size() && baseline.path(row).startsWith(prefix))) {
+                String known = row < baseline.size() && baseline.path(row).startsWith(prefix) ? baseline.path(row) : null;
+                String seen = entry == null ? null : entry.relative;
+                int cmp = known == null ? 1 : seen == null ? -1 : PathOrder.compare(known, seen);
+                if (cmp < 0) {
+                    publish(known, IntegrityStatus.MISSING);
+                    row++;
+                } else if (cmp > 0) {
+                    publish(seen, IntegrityStatus.EXTRA);
+                    entry = walker.next();
+                } else {
+                    FileRecord m = entry.metadata;
+                    boolean unchanged = m.size == baseline.fileSize(row) && m.modifiedNanos == baseline.modified(row)
+                            && m.fileKey == baseline.fileKey(row);
+                    if (unchanged) publish(seen, IntegrityStatus.SAME);
+                    else evaluate(seen);
+                    row++;
+                    entry = walker.next();
+                }
+            }
+        } catch (IOException e) {
+            // the directory vanished mid-walk; its delete event takes it from here
+        }
+    }
+
+    // Alerts only on transitions, so a file that keeps being rewritten is reported once.
+    private void publish(String rel, IntegrityStatus status) {
+        IntegrityStatus previous = status == IntegrityStatus.SAME ? reported.remove(rel) : reported.put(rel, status);
+        if (status == IntegrityStatus.SAME ? previous != null : previous != status) listener.alert(rel, status);
+    }
+
+    private String relative(Path p) {
+        return root.relativize(p).toString();
+    }
+}
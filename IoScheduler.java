@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Sits between the tree walk and the hashing threads, with the shape of a CompletionService.
+// Reads wait in a queue per device and are handed to the pool only while their device is below its
+// concurrency limit, so one slow disk cannot occupy every hashing thread; devices take turns.
+// Within a device the smallest file goes first, so thousands of small files do not queue behind a
+// few huge ones, and every fourth dispatch takes the longest-waiting read so large files still move.
+// Devices are told apart by st_dev (or the path root where there is none), looked up per folder and
+// only when a per-device limit is set; without one every read shares a single queue.
+final class IoScheduler<T> {
+
+    private static final int AGING_PERIOD = 4;
+    private static final int FOLDER_CACHE = 256;
+
+    private final ExecutorService pool;
+    private final int threads;
+    private final int perDevice;
+    private final boolean unixDevices;
+    private final BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<>();
+    private final Map<Object, Device> devices = new HashMap<>();
+    private final List<Device> ring = new ArrayList<>();
+    private int turn;
+    private int running;
+    private long submitted;
+    private boolean stopped;
+
+    // recently seen folders and their device, for the walking thread only
+    private final Map<Path, Object> folderDevices = new LinkedHashMap<Path, Object>(FOLDER_CACHE * 2, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Path, Object> eldest) { return size() > FOLDER_CACHE; }
+    };
+
+    IoScheduler(ScanOptions options) {
+        this.threads = options.getParallelism();
+        this.perDevice = options.getIoPerDevice() > 0 ? Math.min(options.getIoPerDevice(), threads) : threads;
+        this.pool = Executors.newFixedThreadPool(threads);
+        boolean unix;
+        try {
+            unix = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+        } catch (RuntimeException e) {
+            unix = false;
+        }
+        this.unixDevices = unix;
+    }
+
+    Future<T> submit(Path file, long size, Callable<T> task) {
+        Object key = perDevice < threads ? deviceOf(file) : "";
+        synchronized (this) {
+            Device device = devices.get(key);
+            if (device == null) {
+                device = new Device();
+                devices.put(key, device);
+                ring.add(device);
+            }
+            Read read = new Read(task, device, size, submitted++);
+            device.add(read);
+            dispatch();
+            return read;
+        }
+    }
+
+    Future<T> take() throws InterruptedException { return completed.take(); }
+
+    Future<T> poll() { return completed.poll(); }
+
+    // Queued reads are dropped; reads finishing afterwards dispatch nothing more.
+    synchronized void shutdownNow() {
+        stopped = true;
+        pool.shutdownNow();
+    }
+
+    // Fills free threads from the devices in turn, skipping those at their limit.
+    private void dispatch() {
+        while (!stopped && running < threads) {
+            Read next = null;
+            for (int i = 0; i < ring.size() && next == null; i++) {
+                turn = (turn + 1) % ring.size();
+                Device d = ring.get(turn);
+                if (d.running < perDevice) next = d.poll();
+            }
+            if (next == null) return;
+            running++;
+            next.device.running++;
+            pool.execute(next);
+        }
+    }
+
+    private synchronized void finished(Read read) {
+        running--;
+        read.device.running--;
+        dispatch();
+    }
+
+    private Object deviceOf(Path file) {
+        Path folder = file.getParent();
+        if (folder == null) return "";
+        Object device = folderDevices.get(folder);
+        if (device == null) {
+            try {
+                device = unixDevices ? Files.getAttribute(folder, "unix:dev") : folder.getRoot();
+            } catch (IOException | RuntimeException e) {
+                device = folder.getRoot(); // the read itself will report what is wrong with the folder
+            }
+            if (device == null) device = "";
+            folderDevices.put(folder, device);
+        }
+        return device;
+    }
+
+    // Both orders hold the same reads; one taken through either order is skipped in the other.
+    private final class Device {
+        final PriorityQueue<Read> bySize = new PriorityQueue<>(Comparator.comparingLong((Read r) -> r.size).thenComparingLong(r -> r.seq));
+        final ArrayDeque<Read> byAge = new ArrayDeque<>();
+        int waiting;
+        int running;
+        long dispatched;
+
+        void add(Read read) {
+            bySize.add(read);
+            byAge.add(read);
+            waiting++;
+        }
+
+        Read poll() {
+            if (waiting == 0) return null;
+            Read read;
+            if (++dispatched % AGING_PERIOD == 0) {
+                do read = byAge.poll(); while (read.taken);
+            } else {
+                do read = bySize.poll(); while (read.taken);
+            }
+            read.taken = true;
+            waiting--;
+            return read;
+        }
+    }
+
+    private final class Read extends FutureTask<T> {
+        final Device device;
+        final long size;
+        final long seq;
+        boolean taken;
+
+        Read(Callable<T> task, Device device, long size, long seq) {
+            super(task);
+            this.device = device;
+            this.size = size;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        protected void done() { completed.add(this); }
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.InterruptedIOException;
+
+// Token buckets for a read budget in bytes per second and read requests per second, shared by every
+// thread hashing under the same ScanOptions. A read is paid for after it happened: the balance may go
+// negative, and the reader then sleeps until it is back at zero, so the long-run rate holds whatever
+// the request size. Up to one second's worth of unused budget is saved up as burst.
+final class IoThrottle {
+
+    private final long bytesPerSecond; // 0 = unlimited
+    private final long opsPerSecond;
+    private double bytes;
+    private double ops;
+    private long refilled = System.nanoTime();
+
+    private IoThrottle(long bytesPerSecond, long opsPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.opsPerSecond = opsPerSecond;
+        this.bytes = bytesPerSecond;
+        this.ops = opsPerSecond;
+    }
+
+    // null when neither budget is limited, so callers skip throttling with a null check.
+    static IoThrottle of(long bytesPerSecond, long opsPerSecond) {
+        if (bytesPerSecond < 0 || opsPerSecond < 0) throw new IllegalArgumentException("I/O limits cannot be negative");
+        return bytesPerSecond == 0 && opsPerSecond == 0 ? null : new IoThrottle(bytesPerSecond, opsPerSecond);
+    }
+
+    // Charges one request of n bytes (an open is a request of 0 bytes) and sleeps off any debt.
+    // Returns the nanoseconds slept.
+    long paid(long n) throws InterruptedIOException {
+        long wait = 0;
+        synchronized (this) {
+            long now = System.nanoTime();
+            double seconds = (now - refilled) / 1e9;
+            refilled = now;
+            if (bytesPerSecond > 0) {
+                bytes = Math.min(bytesPerSecond, bytes + seconds * bytesPerSecond) - n;
+                if (bytes < 0) wait = (long) (-bytes * 1e9 / bytesPerSecond);
+            }
+            if (opsPerSecond > 0) {
+                ops = Math.min(opsPerSecond, ops + seconds * opsPerSecond) - 1;
+                if (ops < 0) wait = Math.max(wait, (long) (-ops * 1e9 / opsPerSecond));
+            }
+        }
+        if (wait <= 0) return 0;
+        try {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Read cancelled while throttled");
+        }
+        return wait;
+    }
+
+    @Override
+    public String toString() {
+        return (bytesPerSecond > 0 ? ScanProgress.formatBytes(bytesPerSecond) + "/s" : "")
+                + (bytesPerSecond > 0 && opsPerSecond > 0 ? ", " : "")
+                + (opsPerSecond > 0 ? opsPerSecond + " reads/s" : "");
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Directory digests over a DigestTable. Each folder's digest covers its children in PathOrder:
+// for a file its name and content digest, for a subfolder its name and folder digest, so two
+// folders with equal digests hold identical subtrees and the root digest stands for the whole tree.
+// Folders are numbered in the order they are first reached (which is PathOrder); each one also
+// records the range of table rows below it, so a matching subtree can be skipped in one step.
+final class MerkleTree {
+
+    private static final byte FILE = 'F';
+    private static final byte DIR = 'D';
+
+    private final int digestLength;
+    private final List<String> dirs = new ArrayList<>(); // "" for the root, else "a/b/" with a trailing separator
+    private int[] first = new int[64];
+    private int[] end = new int[64];
+    private byte[] digests;
+    private HashMap<String, Integer> byPath;
+
+    MerkleTree(int digestLength) {
+        this.digestLength = digestLength;
+        this.digests = new byte[64 * digestLength];
+    }
+
+    // One pass over the rows with a stack of the folders on the current path.
+    static MerkleTree build(DigestTable table) {
+        Hasher hasher = Hashers.forName(table.algorithm());
+        MerkleTree tree = new MerkleTree(table.digestLength());
+        ArrayDeque<Integer> openDirs = new ArrayDeque<>();
+        ArrayDeque<Hasher.State> states = new ArrayDeque<>();
+        Node node = new Node();
+        openDirs.push(tree.addDir("", 0));
+        states.push(hasher.newState());
+        for (int row = 0; row < table.size(); row++) {
+            String path = table.path(row);
+            int cut = lastSeparator(path) + 1;
+            while (!path.startsWith(tree.dirs.get(openDirs.peek()))) {
+                tree.close(openDirs, states, row, node);
+            }
+            for (int at = tree.dirs.get(openDirs.peek()).length(); at < cut; ) {
+                at = nextSeparator(path, at) + 1;
+                openDirs.push(tree.addDir(path.substring(0, at), row));
+                states.push(hasher.newState());
+            }
+            node.feed(states.peek(), FILE, path.substring(cut), table.digest(row));
+        }
+        while (!openDirs.isEmpty()) tree.close(openDirs, states, table.size(), node);
+        return tree;
+    }
+
+    int size() { return dirs.size(); }
+
+    String dir(int d) { return dirs.get(d); }
+
+    int firstRow(int d) { return first[d]; }
+
+    int endRow(int d) { return end[d]; }
+
+    byte[] digest(int d) {
+        return Arrays.copyOfRange(digests, d * digestLength, (d + 1) * digestLength);
+    }
+
+    String rootHex() { return Hex.encode(digests, 0, digestLength); }
+
+    boolean sameDigest(int d, MerkleTree other, int otherD) {
+        if (digestLength != other.digestLength) return false;
+        int a = d * digestLength, b = otherD * digestLength;
+        for (int i = 0; i < digestLength; i++) {
+            if (digests[a + i] != other.digests[b + i]) return false;
+        }
+        return true;
+    }
+
+    // Folder number for a "a/b/" prefix, or -1.
+    synchronized int find(String dir) {
+        if (byPath == null) {
+            byPath = new HashMap<>(dirs.size() * 2);
+            for (int d = 0; d < dirs.size(); d++) byPath.put(dirs.get(d), d);
+        }
+        Integer d = byPath.get(dir);
+        return d == null ? -1 : d;
+    }
+
+    // Appends a folder as stored in an index; its end and digest are filled in by setDir().
+    int addDir(String dir, int firstRow) {
+        int d = dirs.size();
+        if (d == first.length) {
+            first = Arrays.copyOf(first, d * 2);
+            end = Arrays.copyOf(end, d * 2);
+            digests = Arrays.copyOf(digests, d * 2 * digestLength);
+        }
+        dirs.add(dir);
+        first[d] = firstRow;
+        end[d] = firstRow;
+        return d;
+    }
+
+    void setDir(int d, int endRow, byte[] digest) {
+        end[d] = endRow;
+        System.arraycopy(digest, 0, digests, d * digestLength, digestLength);
+    }
+
+    private void close(ArrayDeque<Integer> openDirs, ArrayDeque<Hasher.State> states, int endRow, Node node) {
+        int d = openDirs.pop();
+        byte[] digest = states.pop().digest();
+        setDir(d, endRow, digest);
+        if (states.isEmpty()) return;
+        String dir = dirs.get(d);
+        int start = lastSeparator(dir.substring(0, dir.length() - 1)) + 1;
+        node.feed(states.peek(), DIR, dir.substring(start, dir.length() - 1), digest);
+    }
+
+    private static int lastSeparator(String path) {
+        return Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+    }
+
+    private static int nextSeparator(String path, int from) {
+        int slash = path.indexOf('/', from);
+        int sep = File.separatorChar == '/' ? slash : path.indexOf(File.separatorChar, from);
+        return slash < 0 ? sep : sep < 0 ? slash : Math.min(slash, sep);
+    }
+
+    // Encodes one child as type, name length, UTF-8 name and digest, reusing a single buffer.
+    private static final class Node {
+        private ByteBuffer buf = ByteBuffer.allocate(1024);
+
+        void feed(Hasher.State state, byte type, String name, byte[] digest) {
+            byte[] n = name.getBytes(StandardCharsets.UTF_8);
+            int len = 1 + 4 + n.length + digest.length;
+            if (buf.capacity() < len) buf = ByteBuffer.allocate(Math.max(len, buf.capacity() * 2));
+            buf.clear();
+            buf.put(type).putInt(n.length).put(n).put(digest);
+            buf.flip();
+            state.update(buf);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.File;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+// Include/exclude globs for tree walks. A pattern without '/' matches an entry's name at any depth
+// ("*.tmp", ".git"); one with '/' matches the path relative to the scanned root ("build/**").
+// Excludes apply to folders and files alike, so an excluded folder is never listed; includes only
+// decide which files are kept. A shard worker's filter also leaves out what belongs to other shards.
+// The index folder is always left out when it lies inside the tree (e.g. scanning the working
+// directory with the default relative index folder), so a scan never hashes its own index files.
+final class PathFilter {
+
+    static final PathFilter ALL = new PathFilter(Collections.emptyList(), Collections.emptyList(), null, null);
+
+    private final Rule[] includes;
+    private final Rule[] excludes;
+    private final ScanShard shard; // null outside sharded scans
+    private final String indexDir; // relative path of the index folder, null when it is outside the tree
+
+    private static final class Rule {
+        final PathMatcher matcher;
+        final boolean wholePath;
+
+        Rule(FileSystem fs, String glob) {
+            this.matcher = fs.getPathMatcher("glob:" + glob);
+            this.wholePath = glob.indexOf('/') >= 0;
+        }
+
+        boolean matches(Path name, String relative) {
+            if (!wholePath) return matcher.matches(name);
+            return matcher.matches(name.getFileSystem().getPath(relative));
+        }
+    }
+
+    private PathFilter(List<String> includes, List<String> excludes, ScanShard shard, String indexDir) {
+        this.shard = shard;
+        this.indexDir = indexDir;
+        FileSystem fs = FileSystems.getDefault();
+        this.includes = new Rule[includes.size()];
+        for (int i = 0; i < this.includes.length; i++) this.includes[i] = new Rule(fs, includes.get(i));
+        this.excludes = new Rule[excludes.size()];
+        for (int i = 0; i < this.excludes.length; i++) this.excludes[i] = new Rule(fs, excludes.get(i));
+    }
+
+    // Filter for walks of the tree at root; relative paths are taken against root.
+    static PathFilter of(ScanOptions options, Path root) {
+        String indexDir = null;
+        Path tree = root.toAbsolutePath().normalize();
+        Path index = Paths.get(options.getIndexDir()).toAbsolutePath().normalize();
+        if (index.startsWith(tree) && !index.equals(tree)) indexDir = tree.relativize(index).toString();
+        if (options.getIncludes().isEmpty() && options.getExcludes().isEmpty() && options.getShard() == null && indexDir == null) return ALL;
+        return new PathFilter(options.getIncludes(), options.getExcludes(), options.getShard(), indexDir);
+    }
+
+    static void validate(String glob) {
+        try {
+            FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid glob: " + glob);
+        }
+    }
+
+    // Checked from the name alone, before the entry is even stat'ed.
+    boolean isExcluded(Path name, String relative) {
+        if (relative.equals(indexDir)) return true;
+        if (shard != null && relative.indexOf(File.separatorChar) < 0 && !shard.holdsRootEntry(relative)) return true;
+        for (Rule r : excludes) {
+            if (r.matches(name, relative)) return true;
+        }
+        return false;
+    }
+
+    boolean isIncludedFile(Path name, String relative) {
+        if (shard != null && !shard.holdsFile(relative)) return false;
+        if (includes.length == 0) return true;
+        for (Rule r : includes) {
+            if (r.matches(name, relative)) return true;
+        }
+        return false;
+    }
+
+    // For a single path outside a walk (watch events): excluded itself or below an excluded folder.
+    boolean isExcludedPath(String relative) {
+        if (excludes.length == 0 && shard == null && indexDir == null) return false;
+        FileSystem fs = FileSystems.getDefault();
+        int start = 0;
+        while (start < relative.length()) {
+            int end = relative.indexOf(File.separatorChar, start);
+            if (end < 0) end = relative.length();
+            if (isExcluded(fs.getPath(relative.substring(start, end)), relative.substring(0, end))) return true;
+            start = end + 1;
+        }
+        return false;
+    }
+
+    boolean acceptsFile(String relative) {
+        if (isExcludedPath(relative)) return false;
+        return isIncludedFile(FileSystems.getDefault().getPath(relative).getFileName(), relative);
+    }
+}
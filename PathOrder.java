@@ -0,0 +1,26 @@
+import java.io.File;
+import java.util.Comparator;
+
+// Orders relative paths component by component, which is exactly the order a depth-first walk
+// produces when every directory is listed sorted by name. Treating the separator as the lowest
+// character gives that order without splitting the strings: "a/b" sorts before "a.b".
+final class PathOrder {
+
+    static final Comparator<String> COMPARATOR = PathOrder::compare;
+
+    private PathOrder() {}
+
+    static int compare(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i++) {
+            char ca = a.charAt(i), cb = b.charAt(i);
+            if (ca == cb) continue;
+            return weight(ca) - weight(cb);
+        }
+        return a.length() - b.length();
+    }
+
+    private static int weight(char c) {
+        return c == '/' || c == File.separatorChar ? -1 : c;
+    }
+}
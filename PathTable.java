@@ -0,0 +1,70 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// String table for relative paths. Each distinct directory prefix is stored once; a file is just
+// a directory id plus its name, kept as UTF-8 in one shared byte arena. For a typical tree that is
+// ~25 bytes per path instead of a full String key per file.
+final class PathTable {
+
+    private final List<String> dirs = new ArrayList<>();
+    private final HashMap<String, Integer> dirIds = new HashMap<>();
+    private int[] fileDir = new int[1024];
+    private int[] nameStart = new int[1024];
+    private byte[] arena = new byte[16 * 1024];
+    private int arenaSize;
+    private int count;
+    private int lastDir = -1;
+
+    PathTable() {
+        dirs.add("");
+        dirIds.put("", 0);
+    }
+
+    int size() { return count; }
+
+    int add(String relative) {
+        int cut = Math.max(relative.lastIndexOf('/'), relative.lastIndexOf(File.separatorChar)) + 1;
+        int dir = dirId(relative, cut);
+        byte[] name = relative.substring(cut).getBytes(StandardCharsets.UTF_8);
+        if (count == fileDir.length) {
+            fileDir = Arrays.copyOf(fileDir, count * 2);
+            nameStart = Arrays.copyOf(nameStart, count * 2);
+        }
+        if (arenaSize + name.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + name.length));
+        }
+        System.arraycopy(name, 0, arena, arenaSize, name.length);
+        fileDir[count] = dir;
+        nameStart[count] = arenaSize;
+        arenaSize += name.length;
+        return count++;
+    }
+
+    // Safe to call from several threads once the table is no longer being added to.
+    String get(int id) {
+        int start = nameStart[id];
+        int end = id + 1 < count ? nameStart[id + 1] : arenaSize;
+        return dirs.get(fileDir[id]).concat(new String(arena, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    private int dirId(String relative, int cut) {
+        // rows usually arrive grouped by directory, so try the previous one before hashing the prefix
+        if (lastDir >= 0) {
+            String last = dirs.get(lastDir);
+            if (last.length() == cut && relative.startsWith(last)) return lastDir;
+        }
+        String prefix = relative.substring(0, cut);
+        Integer id = dirIds.get(prefix);
+        if (id == null) {
+            id = dirs.size();
+            dirs.add(prefix);
+            dirIds.put(prefix, id);
+        }
+        lastDir = id;
+        return id;
+    }
+}
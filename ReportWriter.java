@@ -0,0 +1,354 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+// Streams report rows straight to a file or stdout: one begin(), any number of row()s, close().
+// Rows are escaped and written field by field into a large buffer, never collected first, so a
+// comparison can feed a report of millions of rows through statusSink() without a table in between.
+abstract class ReportWriter implements Closeable {
+
+    enum Format {
+        CSV, JSONL, HTML;
+
+        static Format forName(String name) {
+            switch (name.toLowerCase()) {
+                case "csv": return CSV;
+                case "jsonl": case "json": return JSONL;
+                case "html": case "htm": return HTML;
+                default: throw new IllegalArgumentException("Unknown format: " + name);
+            }
+        }
+
+        // From a file name such as report.csv or report.jsonl.gz; null when the extension says nothing.
+        static Format forFile(String fileName) {
+            String name = stripGzip(fileName.toLowerCase());
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) return null;
+            try {
+                return forName(name.substring(dot + 1));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final int BUFFER = 1 << 20;
+
+    protected final Writer out;
+    private final boolean closeStream;
+    private final Meter meter;
+    protected String[] columns = new String[0];
+    private boolean begun; // whether header() went out, so close() knows a footer belongs after it
+
+    ReportWriter(OutputStream stream, boolean closeStream) {
+        this.meter = new Meter(stream);
+        this.out = new OutputStreamWriter(meter, StandardCharsets.UTF_8);
+        this.closeStream = closeStream;
+    }
+
+    static ReportWriter create(Format format, OutputStream stream, boolean closeStream) {
+        switch (format) {
+            case CSV: return new Csv(stream, closeStream);
+            case JSONL: return new JsonLines(stream, closeStream);
+            default: return new Html(stream, closeStream);
+        }
+    }
+
+    // Format from the extension unless given; a .gz suffix (or gzip=true) compresses on the fly.
+    static ReportWriter create(Path file, Format format, boolean gzip) throws IOException {
+        String name = file.getFileName().toString();
+        if (format == null) format = Format.forFile(name);
+        if (format == null) throw new IllegalArgumentException("Cannot tell the report format from " + name + "; use .csv, .jsonl or .html");
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(ch), BUFFER);
+        if (gzip || name.toLowerCase().endsWith(".gz")) stream = new GZIPOutputStream(stream, 1 << 16);
+        return create(format, stream, true);
+    }
+
+    // stdout and other shared streams are only flushed on close, never closed.
+    static ReportWriter create(Format format, OutputStream stream) {
+        return create(format, new BufferedOutputStream(stream, BUFFER) {
+            @Override public void close() throws IOException { flush(); }
+        }, true);
+    }
+
+    void begin(String title, String... columns) throws IOException {
+        this.columns = columns;
+        begun = true;
+        header(title);
+    }
+
+    // Values are written as-is; a Number stays unquoted where the format cares (JSON).
+    abstract void row(Object... values) throws IOException;
+
+    // Optional closing line, e.g. the Same/Modified/Missing/Extra counts.
+    void summary(String text) throws IOException {}
+
+    protected void header(String title) throws IOException {}
+
+    protected void footer() throws IOException {}
+
+    // Adapts the writer to comparison output: one (path, status) row per result, plus the differing
+    // byte ranges when the report was begun with a third column for them.
+    ComparisonSink statusSink() {
+        if (columns.length < 3) return (path, status) -> row(path, status.label);
+        return new ComparisonSink() {
+            @Override
+            public void accept(String path, IntegrityStatus status) throws IOException {
+                row(path, status.label, "");
+            }
+
+            @Override
+            public void accept(String path, IntegrityStatus status, String ranges) throws IOException {
+                row(path, status.label, ranges);
+            }
+        };
+    }
+
+    // Counts the report's bytes and the time spent pushing them out under ScanMetrics' export stage.
+    void metrics(ScanMetrics metrics) {
+        meter.metrics = metrics;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (begun) footer(); // a command that failed before its header leaves no half document
+            out.flush();
+        } finally {
+            if (closeStream) out.close();
+        }
+    }
+
+    // Sits below the character encoder, so it sees the text in blocks rather than field by field.
+    // Bytes are counted before any gzip compression further down.
+    private static final class Meter extends FilterOutputStream {
+        volatile ScanMetrics metrics;
+
+        Meter(OutputStream out) { super(out); }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ScanMetrics m = metrics;
+            if (m == null) {
+                out.write(b, off, len);
+                return;
+            }
+            long started = System.nanoTime();
+            out.write(b, off, len);
+            m.bytesWritten(len);
+            m.stage(ScanMetrics.Stage.EXPORT, started);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ScanMetrics m = metrics;
+            long started = System.nanoTime();
+            out.flush();
+            if (m != null) m.stage(ScanMetrics.Stage.EXPORT, started);
+        }
+    }
+
+    static String stripGzip(String name) {
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    // RFC 4180: quote a field only when it holds a comma, quote or line break.
+    static void writeCsv(Writer out, String s) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '"') {
+                out.write(s, start, i + 1 - start);
+                out.write('"');
+                start = i + 1;
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+
+    static void writeJson(Writer out, String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String esc;
+            switch (c) {
+                case '"': esc = "\\\""; break;
+                case '\\': esc = "\\\\"; break;
+                case '\n': esc = "\\n"; break;
+                case '\r': esc = "\\r"; break;
+                case '\t': esc = "\\t"; break;
+                default:
+                    if (c >= 0x20) continue;
+                    esc = String.format("\\u%04x", (int) c);
+            }
+            out.write(s, start, i - start);
+            out.write(esc);
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+
+    static void writeHtml(Writer out, String s) throws IOException {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String esc;
+            switch (s.charAt(i)) {
+                case '&': esc = "&amp;"; break;
+                case '<': esc = "&lt;"; break;
+                case '>': esc = "&gt;"; break;
+                case '"': esc = "&quot;"; break;
+                default: continue;
+            }
+            out.write(s, start, i - start);
+            out.write(esc);
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+    }
+
+    static final class Csv extends ReportWriter {
+        Csv(OutputStream stream, boolean closeStream) { super(stream, closeStream); }
+
+        @Override
+        protected void header(String title) throws IOException {
+            row((Object[]) columns);
+        }
+
+        @Override
+        void row(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                writeCsv(out, String.valueOf(values[i]));
+            }
+            out.write('\n');
+        }
+    }
+
+    static final class JsonLines extends ReportWriter {
+        private String[] keys; // "name": prefixes, escaped once
+
+        JsonLines(OutputStream stream, boolean closeStream) { super(stream, closeStream); }
+
+        @Override
+        protected void header(String title) throws IOException {
+            keys = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                StringWriter key = new java.io.StringWriter();
+                writeJson(key, columns[i]);
+                keys[i] = (i > 0 ? "," : "") + key + ":";
+            }
+        }
+
+        @Override
+        void row(Object... values) throws IOException {
+            out.write('{');
+            for (int i = 0; i < values.length; i++) {
+                out.write(keys[i]);
+                if (values[i] instanceof Number) out.write(values[i].toString());
+                else writeJson(out, String.valueOf(values[i]));
+            }
+            out.write("}\n");
+        }
+    }
+
+    // A single self-contained page; status cells are coloured like the result table in the GUI.
+    static final class Html extends ReportWriter {
+        private int statusColumn = -1;
+        private String summary;
+
+        Html(OutputStream stream, boolean closeStream) { super(stream, closeStream); }
+
+        @Override
+        protected void header(String title) throws IOException {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equalsIgnoreCase("status")) statusColumn = i;
+            }
+            out.write("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>");
+            writeHtml(out, title);
+            out.write("</title>\n<style>body{font-family:Segoe UI,sans-serif;margin:24px}"
+                    + "table{border-collapse:collapse}td,th{padding:4px 8px;border-bottom:1px solid #ddd;text-align:left}"
+                    + "td{font-family:Consolas,monospace}th{background:#f0f0f0}"
+                    + ".Same{background:#c6efce}.Modified{background:#ffe0b2}.Missing{background:#ffcccb}.Extra{background:#d9eaf6}"
+                    + "</style></head><body>\n<h2>");
+            writeHtml(out, title);
+            out.write("</h2>\n<p>Generated ");
+            out.write(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            out.write("</p>\n<table>\n<tr>");
+            for (String c : columns) {
+                out.write("<th>");
+                writeHtml(out, c);
+                out.write("</th>");
+            }
+            out.write("</tr>\n");
+        }
+
+        @Override
+        void row(Object... values) throws IOException {
+            out.write("<tr>");
+            for (int i = 0; i < values.length; i++) {
+                String v = String.valueOf(values[i]);
+                if (i == statusColumn) {
+                    out.write("<td class=\"");
+                    writeHtml(out, v);
+                    out.write("\">");
+                } else {
+                    out.write("<td>");
+                }
+                writeHtml(out, v);
+                out.write("</td>");
+            }
+            out.write("</tr>\n");
+        }
+
+        @Override
+        void summary(String text) {
+            summary = text;
+        }
+
+        @Override
+        protected void footer() throws IOException {
+            out.write("</table>\n");
+            if (summary != null) {
+                out.write("<p><b>");
+                writeHtml(out, summary);
+                out.write("</b></p>\n");
+            }
+            out.write("</body></html>\n");
+        }
+    }
+}
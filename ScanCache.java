@@ -0,0 +1,40 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Session-level cache of scan results, shared by "Generate Hashes" and "Check Integrity".
+// A cached result is never trusted blindly: every lookup re-stats the files and only rehashes
+// those whose size, mtime or file key moved since the cached scan.
+final class ScanCache {
+
+    private final ConcurrentHashMap<String, HashIndex> folders = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FileRecord> files = new ConcurrentHashMap<>();
+
+    // Returns an up-to-date index for root, rehashing only what changed since the last scan.
+    HashIndex scanFolder(File root, HashEngine engine) throws Exception {
+        String key = root.getAbsolutePath();
+        HashIndex cached = folders.get(key);
+        // a cached scan under another algorithm or chunking is no use; the stored index for this one may be
+        HashIndex previous = cached != null && engine.isCompatible(cached) ? cached : engine.loadIndex(root);
+        HashIndex current = engine.scan(root, previous);
+        engine.saveIndex(root, current);
+        folders.put(key, current);
+        return current;
+    }
+
+    String fileDigest(File file, String algorithm, ScanOptions options) throws Exception {
+        Path path = file.toPath();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        FileRecord current = new FileRecord(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                FileRecord.keyOf(attrs.fileKey()), null);
+        String key = file.getAbsolutePath() + "\0" + algorithm;
+        FileRecord cached = files.get(key);
+        if (!options.isForceRehash() && current.sameMetadata(cached)) return Hex.encode(cached.digest);
+        byte[] digest = FileHasher.digest(path, algorithm, options);
+        files.put(key, new FileRecord(current.size, current.modifiedNanos, current.fileKey, digest));
+        return Hex.encode(digest);
+    }
+}
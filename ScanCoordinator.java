@@ -0,0 +1,233 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Splits a folder scan into shards, has a ShardTransport scan each one into a partial index, and
+// merges the partial indexes back into the index an ordinary scan would have produced (same rows,
+// same root digest), which the comparison then works from as usual.
+//
+// Every finished shard is saved as a checkpoint next to the stored index, in "<index>.shards/",
+// together with the plan that says how the tree was cut. A run that finds a plan made with the same
+// settings keeps it, and scans a shard that has a checkpoint against that checkpoint as its previous
+// index: files whose size, modification time and file key still match are taken from it, the rest
+// are read again. So a crash late in a long scan costs one shard, not the whole run, and a checkpoint
+// left days ago is still checked against the tree as it is now. The checkpoints stay after the merge;
+// the caller discards them once the merged index is safe (HashEngine.saveIndex) or no longer needed.
+final class ScanCoordinator {
+
+    private static final String PLAN_HEADER = "fis-shards 1";
+
+    private final ScanOptions options;
+    private final List<String> linkLoops = Collections.synchronizedList(new ArrayList<>());
+    private int resumed;
+
+    ScanCoordinator(ScanOptions options) {
+        this.options = options;
+    }
+
+    // Shards scanned at the same time.
+    private static int workers(ScanOptions options) {
+        return options.getShardWorkers() > 0 ? options.getShardWorkers() : Math.min(options.getShards(), options.getParallelism());
+    }
+
+    // Like HashEngine.scan(root, previous), shard by shard; up to workers(options) shards at once.
+    HashIndex scan(File root, HashIndex previous) throws Exception {
+        ShardTransport transport = ShardTransport.forName(options.getShardTransport());
+        boolean rehash = previous == null || options.isForceRehash();
+        Path dir = checkpointDir(root);
+        String settings = settings(rehash);
+        List<ScanShard> plan = loadPlan(dir, settings);
+        if (plan == null) {
+            deleteCheckpoints(dir);
+            plan = plan(root);
+            savePlan(dir, settings, plan);
+        }
+
+        int workers = Math.min(workers(options), plan.size());
+        ScanOptions shardOptions = options.copy().parallelism(Math.max(1, options.getParallelism() / workers));
+        if (rehash) shardOptions.forceRehash(true);
+        // each shard schedules its own reads, so the shards running at once split the per-device limit
+        if (options.getIoPerDevice() > 0) shardOptions.ioPerDevice(Math.max(1, options.getIoPerDevice() / workers));
+        // shards scanned in this process draw on the one read budget of the run; anywhere else each
+        // shard gets an equal share of it
+        if (!(transport instanceof ShardTransport.Local) && (options.getIoBytesPerSecond() > 0 || options.getIoOpsPerSecond() > 0)) {
+            shardOptions.ioLimits(share(options.getIoBytesPerSecond(), workers), share(options.getIoOpsPerSecond(), workers));
+        }
+        ScanProgress progress = options.getProgress();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<?>> running = new ArrayList<>();
+        HashIndex[] partials = new HashIndex[plan.size()];
+        try {
+            for (ScanShard shard : plan) {
+                Path checkpoint = dir.resolve("shard-" + shard.index + ".idx");
+                HashIndex saved = loadCheckpoint(root, checkpoint);
+                ScanOptions run = shardOptions.copy().shard(shard);
+                if (saved != null) {
+                    // digests of the interrupted run, made under these settings: reused where the files still match
+                    run.forceRehash(false);
+                    resumed++;
+                }
+                HashIndex from = saved != null ? saved : previous;
+                running.add(pool.submit(() -> {
+                    if (progress != null) progress.phase("Scanning " + root.getName() + ", " + shard);
+                    linkLoops.addAll(transport.scan(root, shard, run, from, checkpoint));
+                    partials[shard.index] = loadCheckpoint(root, checkpoint);
+                    if (partials[shard.index] == null) throw new IOException("No usable index from " + shard + " at " + checkpoint);
+                    return null;
+                }));
+            }
+            for (Future<?> f : running) f.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (progress != null) progress.phase("Merging " + plan.size() + " shards of " + root.getName());
+        return new HashIndex(root.getAbsolutePath(), merge(partials));
+    }
+
+    private static long share(long limit, int workers) {
+        return limit > 0 ? Math.max(1, limit / workers) : 0;
+    }
+
+    void discardCheckpoints(File root) throws Exception {
+        deleteCheckpoints(checkpointDir(root));
+    }
+
+    // Shards taken from checkpoints of an earlier, interrupted run.
+    int getResumedShards() { return resumed; }
+
+    List<String> getLinkLoops() { return linkLoops; }
+
+    Path checkpointDir(File root) throws Exception {
+        Path index = HashIndex.locationFor(root, options);
+        return index.resolveSibling(index.getFileName() + ".shards");
+    }
+
+    // Everything that changes which files a shard holds or what their digests are; checkpoints made
+    // under different settings are not resumed.
+    private String settings(boolean rehash) {
+        return options.getShardBy() + " " + options.getShards() + " " + options.getAlgorithm() + " [" + options.getChunkSpec()
+                + "] " + options.getLinkPolicy() + " " + options.getIncludes() + " " + options.getExcludes() + (rehash ? " rehash" : "");
+    }
+
+    private List<ScanShard> plan(File root) throws IOException {
+        int count = options.getShards();
+        List<ScanShard> plan = new ArrayList<>();
+        if (options.getShardBy() == ScanShard.Kind.HASH) {
+            for (int i = 0; i < count; i++) plan.add(ScanShard.hash(i, count));
+            return plan;
+        }
+        // Cut the root's entries into runs of about equal weight: an entry weighs one, plus the
+        // entries listed directly inside it for a folder.
+        PathFilter filter = PathFilter.of(options, root.toPath());
+        List<String> names = new ArrayList<>();
+        List<Long> weights = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root.toPath())) {
+            for (Path p : entries) {
+                String name = p.getFileName().toString();
+                if (!filter.isExcluded(p.getFileName(), name)) names.add(name);
+            }
+        }
+        names.sort(PathOrder.COMPARATOR);
+        long total = 0;
+        for (String name : names) {
+            long w = 1 + listedEntries(new File(root, name).toPath());
+            weights.add(w);
+            total += w;
+        }
+        count = Math.max(1, Math.min(count, names.size()));
+        List<String> starts = new ArrayList<>();
+        starts.add("");
+        long sum = 0;
+        for (int i = 0; i < names.size() && starts.size() < count; i++) {
+            if (sum * count >= total * starts.size() && i > 0) starts.add(names.get(i));
+            sum += weights.get(i);
+        }
+        for (int i = 0; i < starts.size(); i++) {
+            plan.add(ScanShard.names(i, starts.size(), starts.get(i), i + 1 < starts.size() ? starts.get(i + 1) : ""));
+        }
+        return plan;
+    }
+
+    private static long listedEntries(Path p) {
+        if (!Files.isDirectory(p)) return 0;
+        long n = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(p)) {
+            for (Path ignored : entries) n++;
+        } catch (IOException e) {
+            // the shard's own walk decides what to do with it
+        }
+        return n;
+    }
+
+    private static List<ScanShard> loadPlan(Path dir, String settings) {
+        try {
+            List<String> lines = Files.readAllLines(dir.resolve("plan"), StandardCharsets.UTF_8);
+            if (lines.size() < 3 || !lines.get(0).equals(PLAN_HEADER) || !lines.get(1).equals(settings)) return null;
+            List<ScanShard> plan = new ArrayList<>();
+            for (String line : lines.subList(2, lines.size())) plan.add(ScanShard.decode(line));
+            return plan;
+        } catch (IOException | IllegalArgumentException e) {
+            return null; // no plan, or not one we can use: start over
+        }
+    }
+
+    private static void savePlan(Path dir, String settings, List<ScanShard> plan) throws IOException {
+        Files.createDirectories(dir);
+        List<String> lines = new ArrayList<>(Arrays.asList(PLAN_HEADER, settings));
+        for (ScanShard shard : plan) lines.add(shard.encode());
+        Path tmp = Files.createTempFile(dir, "plan", ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve("plan"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private HashIndex loadCheckpoint(File root, Path checkpoint) {
+        HashIndex partial = HashIndex.load(checkpoint, root.getAbsolutePath());
+        if (partial == null || !partial.getAlgorithm().equals(options.getAlgorithm())
+                || !partial.getTable().chunkSpec().equals(options.getChunkSpec())) return null;
+        return partial;
+    }
+
+    private static void deleteCheckpoints(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path p : entries) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // k-way merge by PathOrder; shards are disjoint, so no path comes up twice. Name shards already
+    // follow one another and come out concatenated.
+    private DigestTable merge(HashIndex[] partials) {
+        Hasher hasher = Hashers.forName(options.getAlgorithm());
+        DigestTable merged = new DigestTable(hasher.name(), hasher.digestLength(), options.getChunkSpec());
+        int[] next = new int[partials.length];
+        while (true) {
+            int pick = -1;
+            for (int s = 0; s < partials.length; s++) {
+                DigestTable t = partials[s].getTable();
+                if (next[s] < t.size() && (pick < 0
+                        || PathOrder.compare(t.path(next[s]), partials[pick].getTable().path(next[pick])) < 0)) pick = s;
+            }
+            if (pick < 0) return merged;
+            DigestTable from = partials[pick].getTable();
+            int r = next[pick]++;
+            int row = merged.add(from.path(r), from.fileSize(r), from.modified(r), from.fileKey(r));
+            merged.copyDigest(row, from, r);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Where the time of one run went. Stage timers add up busy time per stage (listing, hashing,
+// comparison, history, export), so stages that overlap on different threads are each counted in
+// full. Hashing additionally splits into thread CPU time and the rest, which is time spent waiting
+// for the disk; per-file hash latency goes into a log2 histogram and a small slowest-files list.
+//
+// Like ScanProgress, an instance rides along on a ScanOptions copy and is null when nobody asked
+// for metrics. publish() exposes the latest run over JMX as fis:type=ScanMetrics.
+final class ScanMetrics implements ScanMetricsMBean {
+
+    enum Stage {
+        TRAVERSAL("Traversal"), HASHING("Hashing"), COMPARISON("Comparison"), HISTORY("History"), EXPORT("Export");
+
+        final String label;
+
+        Stage(String label) { this.label = label; }
+    }
+
+    static final String OBJECT_NAME = "fis:type=ScanMetrics";
+    private static final int BUCKETS = 48; // bucket b holds latencies below 2^b microseconds
+
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+    private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray stageCount = new AtomicLongArray(Stage.values().length);
+    private final AtomicLong dirsListed = new AtomicLong();
+    private final AtomicLong filesListed = new AtomicLong();
+    private final AtomicLong filesHashed = new AtomicLong();
+    private final AtomicLong bytesHashed = new AtomicLong();
+    private final AtomicLong filesReused = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final int slowestLimit;
+    private final PriorityQueue<Slow> slowest = new PriorityQueue<>(); // min-heap: the fastest of the slow ones on top
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+
+    private static final class Slow implements Comparable<Slow> {
+        final long nanos;
+        final long bytes;
+        final String path;
+
+        Slow(long nanos, long bytes, String path) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+            this.path = path;
+        }
+
+        @Override
+        public int compareTo(Slow o) { return Long.compare(nanos, o.nanos); }
+    }
+
+    ScanMetrics() {
+        this(Integer.getInteger("fis.metricsSlowest", 10));
+    }
+
+    ScanMetrics(int slowestLimit) {
+        this.slowestLimit = slowestLimit;
+    }
+
+    // Adds the time since startNanos (a System.nanoTime() value) to a stage.
+    void stage(Stage stage, long startNanos) {
+        stageNanos.addAndGet(stage.ordinal(), System.nanoTime() - startNanos);
+        stageCount.incrementAndGet(stage.ordinal());
+    }
+
+    void dirListed() { dirsListed.incrementAndGet(); }
+
+    void fileListed() { filesListed.incrementAndGet(); }
+
+    void filesReused(long n) { filesReused.addAndGet(n); }
+
+    void bytesWritten(long n) { bytesWritten.addAndGet(n); }
+
+    // Time a hashing thread slept to stay within the I/O budget; part of hashing busy time.
+    void throttled(long nanos) { throttledNanos.addAndGet(nanos); }
+
+    // Thread CPU time of the calling thread, or -1 where the JVM cannot tell.
+    long threadCpuNanos() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    // One stretch of hashing work on the calling thread: a whole file, or one chunk of a large one.
+    void hashWork(long wallNanos, long cpuStart) {
+        stageNanos.addAndGet(Stage.HASHING.ordinal(), wallNanos);
+        if (cpuStart >= 0) cpuNanos.addAndGet(Math.min(wallNanos, threadCpuNanos() - cpuStart));
+    }
+
+    // One file done, however it was split up: feeds the counters, the histogram and the slowest list.
+    void fileHashed(Path file, long bytes, long wallNanos) {
+        filesHashed.incrementAndGet();
+        bytesHashed.addAndGet(bytes);
+        stageCount.incrementAndGet(Stage.HASHING.ordinal());
+        long micros = wallNanos / 1000;
+        latency.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        maxLatencyNanos.accumulateAndGet(wallNanos, Math::max);
+        if (slowestLimit <= 0) return;
+        synchronized (slowest) {
+            if (slowest.size() < slowestLimit) {
+                slowest.add(new Slow(wallNanos, bytes, file.toString()));
+            } else if (slowest.peek().nanos < wallNanos) {
+                slowest.poll();
+                slowest.add(new Slow(wallNanos, bytes, file.toString()));
+            }
+        }
+    }
+
+    void finish() {
+        if (endNanos == 0) endNanos = System.nanoTime();
+    }
+
+    // Replaces whatever run was published before; JMX being unavailable is not an error for a scan.
+    void publish() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            synchronized (ScanMetrics.class) {
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+                server.registerMBean(new StandardMBean(this, ScanMetricsMBean.class), name);
+            }
+        } catch (Exception | LinkageError e) {
+            // no platform MBean server (or a security manager forbids it)
+        }
+    }
+
+    // ---- ScanMetricsMBean ----
+
+    @Override public long getRunMillis() { return ((endNanos != 0 ? endNanos : System.nanoTime()) - startNanos) / 1_000_000; }
+
+    @Override public long getDirsListed() { return dirsListed.get(); }
+
+    @Override public long getFilesListed() { return filesListed.get(); }
+
+    @Override public long getFilesHashed() { return filesHashed.get(); }
+
+    @Override public long getBytesHashed() { return bytesHashed.get(); }
+
+    @Override public long getFilesReused() { return filesReused.get(); }
+
+    @Override public long getBytesWritten() { return bytesWritten.get(); }
+
+    @Override public long getTraversalMillis() { return stageMillis(Stage.TRAVERSAL); }
+
+    @Override public long getHashBusyMillis() { return stageMillis(Stage.HASHING); }
+
+    @Override public long getHashCpuMillis() { return cpuTimeSupported ? cpuNanos.get() / 1_000_000 : -1; }
+
+    @Override public long getHashIoWaitMillis() { return cpuTimeSupported ? ioWaitNanos() / 1_000_000 : -1; }
+
+    @Override public long getThrottledMillis() { return throttledNanos.get() / 1_000_000; }
+
+    @Override public long getComparisonMillis() { return stageMillis(Stage.COMPARISON); }
+
+    @Override public long getHistoryMillis() { return stageMillis(Stage.HISTORY); }
+
+    @Override public long getExportMillis() { return stageMillis(Stage.EXPORT); }
+
+    @Override public long getHashLatencyP50Micros() { return percentileMicros(0.50); }
+
+    @Override public long getHashLatencyP90Micros() { return percentileMicros(0.90); }
+
+    @Override public long getHashLatencyP99Micros() { return percentileMicros(0.99); }
+
+    @Override public long getHashLatencyMaxMicros() { return maxLatencyNanos.get() / 1000; }
+
+    @Override
+    public String getBound() {
+        long busy = stageNanos.get(Stage.HASHING.ordinal());
+        if (busy > 0 && throttledNanos.get() * 2 > busy) return "throttled";
+        busy -= throttledNanos.get();
+        if (!cpuTimeSupported || busy <= 0) return "unknown";
+        double cpuShare = (double) cpuNanos.get() / busy;
+        return cpuShare >= 0.7 ? "CPU-bound" : cpuShare <= 0.3 ? "I/O-bound" : "mixed";
+    }
+
+    @Override
+    public String[] getSlowestFiles() {
+        List<Slow> list = slowestSorted();
+        String[] out = new String[list.size()];
+        for (int i = 0; i < out.length; i++) {
+            Slow s = list.get(i);
+            out[i] = formatNanos(s.nanos) + "  " + ScanProgress.formatBytes(s.bytes) + "  " + s.path;
+        }
+        return out;
+    }
+
+    @Override public String getSummary() { return toString(); }
+
+    @Override
+    public String getJson() {
+        StringWriter w = new StringWriter();
+        try {
+            writeJson(w);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // a StringWriter does not fail
+        }
+        return w.toString();
+    }
+
+    // One JSON object, times in milliseconds unless the key says otherwise.
+    void writeJson(Writer out) throws IOException {
+        out.write("{\"runMillis\":" + getRunMillis());
+        out.write(",\"stages\":{");
+        for (Stage s : Stage.values()) {
+            if (s.ordinal() > 0) out.write(',');
+            out.write("\"" + s.name().toLowerCase(Locale.ROOT) + "\":{\"millis\":" + stageMillis(s)
+                    + ",\"count\":" + stageCount.get(s.ordinal()) + "}");
+        }
+        out.write("},\"dirsListed\":" + getDirsListed() + ",\"filesListed\":" + getFilesListed()
+                + ",\"filesHashed\":" + getFilesHashed() + ",\"bytesHashed\":" + getBytesHashed()
+                + ",\"filesReused\":" + getFilesReused() + ",\"bytesWritten\":" + getBytesWritten()
+                + ",\"hashCpuMillis\":" + getHashCpuMillis() + ",\"hashIoWaitMillis\":" + getHashIoWaitMillis()
+                + ",\"throttledMillis\":" + getThrottledMillis()
+                + ",\"bound\":\"" + getBound() + "\"");
+        out.write(",\"hashLatencyMicros\":{\"p50\":" + getHashLatencyP50Micros() + ",\"p90\":" + getHashLatencyP90Micros()
+                + ",\"p99\":" + getHashLatencyP99Micros() + ",\"max\":" + getHashLatencyMaxMicros() + ",\"histogram\":[");
+        int last = BUCKETS - 1;
+        while (last > 0 && latency.get(last) == 0) last--;
+        for (int b = 0; b <= last; b++) {
+            if (b > 0) out.write(',');
+            out.write(Long.toString(latency.get(b)));
+        }
+        out.write("]},\"slowest\":[");
+        List<Slow> list = slowestSorted();
+        for (int i = 0; i < list.size(); i++) {
+            Slow s = list.get(i);
+            if (i > 0) out.write(',');
+            out.write("{\"micros\":" + s.nanos / 1000 + ",\"bytes\":" + s.bytes + ",\"path\":");
+            ReportWriter.writeJson(out, s.path);
+            out.write('}');
+        }
+        out.write("]}");
+    }
+
+    // One line for a status tooltip.
+    String brief() {
+        String line = String.format("%,d files hashed (%s), %,d reused, in %s",
+                getFilesHashed(), ScanProgress.formatBytes(getBytesHashed()), getFilesReused(), formatNanos(getRunMillis() * 1_000_000));
+        return getFilesHashed() > 0 && cpuTimeSupported ? line + ", " + getBound() : line;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Run: ").append(formatNanos(getRunMillis() * 1_000_000)).append('\n');
+        sb.append(String.format("Traversal: %,d folders, %,d files listed in %s%n",
+                getDirsListed(), getFilesListed(), formatNanos(stageNanos.get(Stage.TRAVERSAL.ordinal()))));
+        sb.append(String.format("Hashing: %,d files, %s read, %,d reused from the index%n",
+                getFilesHashed(), ScanProgress.formatBytes(getBytesHashed()), getFilesReused()));
+        long busy = stageNanos.get(Stage.HASHING.ordinal());
+        if (busy > 0) {
+            sb.append("  busy ").append(formatNanos(busy));
+            if (cpuTimeSupported) {
+                sb.append(" = CPU ").append(formatNanos(cpuNanos.get())).append(" + I/O wait ").append(formatNanos(ioWaitNanos()));
+                if (throttledNanos.get() > 0) sb.append(" + throttled ").append(formatNanos(throttledNanos.get()));
+                sb.append(" -> ").append(getBound());
+            }
+            sb.append('\n');
+            sb.append(String.format("  per-file latency: p50 <%s, p90 <%s, p99 <%s, max %s%n",
+                    formatMicros(getHashLatencyP50Micros()), formatMicros(getHashLatencyP90Micros()),
+                    formatMicros(getHashLatencyP99Micros()), formatNanos(maxLatencyNanos.get())));
+        }
+        for (Stage s : new Stage[] { Stage.COMPARISON, Stage.HISTORY, Stage.EXPORT }) {
+            long n = stageCount.get(s.ordinal());
+            if (n == 0) continue;
+            sb.append(s.label).append(": ").append(formatNanos(stageNanos.get(s.ordinal())));
+            if (s == Stage.EXPORT && getBytesWritten() > 0) sb.append(", ").append(ScanProgress.formatBytes(getBytesWritten())).append(" written");
+            sb.append('\n');
+        }
+        String[] slow = getSlowestFiles();
+        if (slow.length > 0) {
+            sb.append("Slowest files:\n");
+            for (String s : slow) sb.append("  ").append(s).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private long ioWaitNanos() {
+        return Math.max(0, stageNanos.get(Stage.HASHING.ordinal()) - cpuNanos.get() - throttledNanos.get());
+    }
+
+    private long stageMillis(Stage s) {
+        return stageNanos.get(s.ordinal()) / 1_000_000;
+    }
+
+    // Upper bound of the histogram bucket holding the given fraction of files.
+    private long percentileMicros(double fraction) {
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) total += latency.get(b);
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += latency.get(b);
+            if (seen >= target) return 1L << b;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    private List<Slow> slowestSorted() {
+        List<Slow> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        list.sort(Collections.reverseOrder());
+        return list;
+    }
+
+    private static String formatMicros(long micros) {
+        return formatNanos(micros * 1000);
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) return String.format("%d us", nanos / 1000);
+        if (nanos < 1_000_000_000) return String.format("%.1f ms", nanos / 1e6);
+        return String.format("%.2f s", nanos / 1e9);
+    }
+}
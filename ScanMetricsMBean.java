@@ -0,0 +1,51 @@
+// JMX view of ScanMetrics (standard MBean naming: the interface is the class name plus "MBean").
+// It has to be public for the MBean server to introspect it.
+public interface ScanMetricsMBean {
+
+    long getRunMillis();
+
+    long getDirsListed();
+
+    long getFilesListed();
+
+    long getFilesHashed();
+
+    long getBytesHashed();
+
+    long getFilesReused();
+
+    long getBytesWritten();
+
+    long getTraversalMillis();
+
+    long getHashBusyMillis();
+
+    long getHashCpuMillis();
+
+    long getHashIoWaitMillis();
+
+    long getThrottledMillis();
+
+    long getComparisonMillis();
+
+    long getHistoryMillis();
+
+    long getExportMillis();
+
+    long getHashLatencyP50Micros();
+
+    long getHashLatencyP90Micros();
+
+    long getHashLatencyP99Micros();
+
+    long getHashLatencyMaxMicros();
+
+    // "CPU-bound", "I/O-bound", "mixed", "throttled" or "unknown"
+    String getBound();
+
+    String[] getSlowestFiles();
+
+    String getSummary();
+
+    String getJson();
+}
@@ -0,0 +1,403 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+// Tunables shared by the hashing engine. Every default can be overridden with a -Dfis.* system property.
+final class ScanOptions {
+
+    // How large files are split for chunk-level digests: not at all, at fixed offsets, or at
+    // content-defined boundaries that survive inserts and deletes earlier in the file.
+    enum Chunking {
+        OFF, FIXED, CDC;
+
+        static Chunking forName(String name) {
+            switch (name.toLowerCase()) {
+                case "off": case "none": return OFF;
+                case "fixed": return FIXED;
+                case "cdc": case "content": return CDC;
+                default: throw new IllegalArgumentException("Unknown chunking: " + name + " (off, fixed or cdc)");
+            }
+        }
+    }
+
+    // What a tree walk does with symbolic links. Followed folder links are checked for loops.
+    enum LinkPolicy {
+        FOLLOW, FILES_ONLY, SKIP;
+
+        static LinkPolicy forName(String name) {
+            switch (name.toLowerCase()) {
+                case "follow": return FOLLOW;
+                case "files": case "files_only": return FILES_ONLY;
+                case "skip": return SKIP;
+                default: throw new IllegalArgumentException("Unknown link policy: " + name + " (follow, files or skip)");
+            }
+        }
+    }
+
+    private int parallelism = Integer.getInteger("fis.parallelism", Runtime.getRuntime().availableProcessors());
+    private String algorithm = Hashers.forName(System.getProperty("fis.algorithm", Hashers.DEFAULT)).name();
+    private int readBufferSize = Integer.getInteger("fis.readBuffer", 1024 * 1024);
+    private long mmapThreshold = Long.getLong("fis.mmapThreshold", 64L * 1024 * 1024);
+    private long mmapChunkSize = Long.getLong("fis.mmapChunk", 256L * 1024 * 1024);
+    private boolean indexEnabled = !"false".equalsIgnoreCase(System.getProperty("fis.index"));
+    private String indexDir = System.getProperty("fis.indexDir", ".fis-index");
+    private boolean forceRehash = Boolean.getBoolean("fis.forceRehash");
+    private double verifySample = Double.parseDouble(System.getProperty("fis.verifySample", "0"));
+    private boolean streaming = Boolean.getBoolean("fis.streaming");
+    private boolean fastCompare = Boolean.getBoolean("fis.fastCompare");
+    private int sampleSize = Integer.getInteger("fis.sampleSize", 64 * 1024);
+    private long watchDebounceMillis = Long.getLong("fis.watchDebounceMs", 500);
+    private Chunking chunking = Chunking.forName(System.getProperty("fis.chunking", "off"));
+    private int chunkSize = Integer.getInteger("fis.chunkSize", 4 * 1024 * 1024);
+    private long chunkThreshold = Long.getLong("fis.chunkThreshold", 64L * 1024 * 1024);
+    private int chunkMemory = Integer.getInteger("fis.chunkMemory", 256 * 1024 * 1024);
+    private Semaphore chunkBuffers = new Semaphore(chunkMemory); // shared by copies
+    private boolean changesOnly = Boolean.getBoolean("fis.changesOnly");
+    private int maxFailures = Integer.getInteger("fis.maxFailures", 0);
+    private LinkPolicy linkPolicy = LinkPolicy.forName(System.getProperty("fis.links", "follow"));
+    private List<String> includes = globs(System.getProperty("fis.include", ""));
+    private List<String> excludes = globs(System.getProperty("fis.exclude", ""));
+    private long ioBytesPerSecond = Long.getLong("fis.ioBytesPerSec", 0);
+    private long ioOpsPerSecond = Long.getLong("fis.ioOpsPerSec", 0);
+    private int ioPerDevice = Integer.getInteger("fis.ioPerDevice", 0);
+    private boolean directIo = Boolean.getBoolean("fis.directIo");
+    private IoThrottle throttle = IoThrottle.of(ioBytesPerSecond, ioOpsPerSecond); // shared by copies
+    private int shards = Integer.getInteger("fis.shards", 1);
+    private ScanShard.Kind shardBy = ScanShard.Kind.forName(System.getProperty("fis.shardBy", "names"));
+    private int shardWorkers = Integer.getInteger("fis.shardWorkers", 0);
+    private String shardTransport = System.getProperty("fis.shardTransport", "local");
+    private ScanShard shard; // per run: set on a shard worker's copy, null when scanning the whole tree
+    private ScanProgress progress; // per run, set on a copy(); null when nobody is watching
+    private ScanMetrics metrics; // likewise, null unless metrics were asked for
+
+    // Snapshot for one run, so toggling options in the UI cannot affect a scan already in flight.
+    ScanOptions copy() {
+        ScanOptions c = new ScanOptions();
+        c.parallelism = parallelism;
+        c.algorithm = algorithm;
+        c.readBufferSize = readBufferSize;
+        c.mmapThreshold = mmapThreshold;
+        c.mmapChunkSize = mmapChunkSize;
+        c.indexEnabled = indexEnabled;
+        c.indexDir = indexDir;
+        c.forceRehash = forceRehash;
+        c.verifySample = verifySample;
+        c.streaming = streaming;
+        c.fastCompare = fastCompare;
+        c.sampleSize = sampleSize;
+        c.watchDebounceMillis = watchDebounceMillis;
+        c.chunking = chunking;
+        c.chunkSize = chunkSize;
+        c.chunkThreshold = chunkThreshold;
+        c.chunkMemory = chunkMemory;
+        c.chunkBuffers = chunkBuffers; // one ceiling for every scan started from these options
+        c.changesOnly = changesOnly;
+        c.maxFailures = maxFailures;
+        c.linkPolicy = linkPolicy;
+        c.includes = new ArrayList<>(includes);
+        c.excludes = new ArrayList<>(excludes);
+        c.ioBytesPerSecond = ioBytesPerSecond;
+        c.ioOpsPerSecond = ioOpsPerSecond;
+        c.ioPerDevice = ioPerDevice;
+        c.directIo = directIo;
+        c.throttle = throttle; // one budget for every scan started from these options
+        c.shards = shards;
+        c.shardBy = shardBy;
+        c.shardWorkers = shardWorkers;
+        c.shardTransport = shardTransport;
+        c.shard = shard;
+        c.progress = progress;
+        c.metrics = metrics;
+        return c;
+    }
+
+    private static List<String> globs(String commaSeparated) {
+        List<String> list = new ArrayList<>();
+        for (String g : commaSeparated.split(",")) {
+            if (!g.trim().isEmpty()) list.add(g.trim());
+        }
+        return list;
+    }
+
+    ScanProgress getProgress() { return progress; }
+
+    ScanOptions progress(ScanProgress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    ScanMetrics getMetrics() { return metrics; }
+
+    ScanOptions metrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    ScanShard getShard() { return shard; }
+
+    ScanOptions shard(ScanShard shard) {
+        this.shard = shard;
+        return this;
+    }
+
+    int getParallelism() { return parallelism; }
+
+    ScanOptions parallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    String getAlgorithm() { return algorithm; }
+
+    // Normalized to the registry's canonical name; unknown names are rejected here, before any scan.
+    ScanOptions algorithm(String algorithm) {
+        this.algorithm = Hashers.forName(algorithm).name();
+        return this;
+    }
+
+    int getReadBufferSize() { return readBufferSize; }
+
+    ScanOptions readBufferSize(int bytes) {
+        if (bytes < 4096) throw new IllegalArgumentException("Read buffer must be at least 4096 bytes");
+        this.readBufferSize = bytes;
+        return this;
+    }
+
+    // Files at or above this size are hashed through memory-mapped chunks; 0 disables mapping.
+    long getMmapThreshold() { return mmapThreshold; }
+
+    ScanOptions mmapThreshold(long bytes) {
+        this.mmapThreshold = bytes;
+        return this;
+    }
+
+    long getMmapChunkSize() { return mmapChunkSize; }
+
+    ScanOptions mmapChunkSize(long bytes) {
+        if (bytes < 4096 || bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("Map chunk must be between 4 KiB and 2 GiB");
+        this.mmapChunkSize = bytes;
+        return this;
+    }
+
+    boolean isIndexEnabled() { return indexEnabled; }
+
+    ScanOptions indexEnabled(boolean indexEnabled) {
+        this.indexEnabled = indexEnabled;
+        return this;
+    }
+
+    String getIndexDir() { return indexDir; }
+
+    ScanOptions indexDir(String indexDir) {
+        this.indexDir = indexDir;
+        return this;
+    }
+
+    // Ignore stored digests and read every file again (the index is still rewritten afterwards).
+    boolean isForceRehash() { return forceRehash; }
+
+    ScanOptions forceRehash(boolean forceRehash) {
+        this.forceRehash = forceRehash;
+        return this;
+    }
+
+    // Fraction (0..1) of metadata-unchanged files that are rehashed anyway to catch silent corruption.
+    double getVerifySample() { return verifySample; }
+
+    ScanOptions verifySample(double fraction) {
+        if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("Verify sample must be between 0 and 1");
+        this.verifySample = fraction;
+        return this;
+    }
+
+    // Walk and merge trees in path order with bounded memory instead of building full maps.
+    boolean isStreaming() { return streaming; }
+
+    ScanOptions streaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    // Decide Same/Modified by size, then head/tail samples, and only then the full digest.
+    boolean isFastCompare() { return fastCompare; }
+
+    ScanOptions fastCompare(boolean fastCompare) {
+        this.fastCompare = fastCompare;
+        return this;
+    }
+
+    int getSampleSize() { return sampleSize; }
+
+    ScanOptions sampleSize(int bytes) {
+        if (bytes < 1) throw new IllegalArgumentException("Sample size must be positive");
+        this.sampleSize = bytes;
+        return this;
+    }
+
+    // How long a path must stay quiet in watch mode before it is rehashed.
+    long getWatchDebounceMillis() { return watchDebounceMillis; }
+
+    ScanOptions watchDebounceMillis(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("Debounce must not be negative");
+        this.watchDebounceMillis = millis;
+        return this;
+    }
+
+    Chunking getChunking() { return chunking; }
+
+    ScanOptions chunking(Chunking chunking) {
+        this.chunking = chunking;
+        return this;
+    }
+
+    // Fixed chunk size, or the target average for content-defined chunks.
+    int getChunkSize() { return chunkSize; }
+
+    ScanOptions chunkSize(int bytes) {
+        if (bytes < 64 * 1024 || Integer.bitCount(bytes) != 1) throw new IllegalArgumentException("Chunk size must be a power of two of at least 64 KiB");
+        this.chunkSize = bytes;
+        return this;
+    }
+
+    // Files at or above this size get chunk digests; their file digest is then taken over the chunks.
+    long getChunkThreshold() { return chunkThreshold; }
+
+    ScanOptions chunkThreshold(long bytes) {
+        if (bytes < chunkSize) throw new IllegalArgumentException("Chunk threshold must be at least the chunk size");
+        this.chunkThreshold = bytes;
+        return this;
+    }
+
+    // Heap for the buffers content-defined chunks are read into, in bytes, across all files being
+    // chunked at once; a file takes its buffers from getChunkBuffers(), one permit per byte.
+    int getChunkMemory() { return chunkMemory; }
+
+    ScanOptions chunkMemory(int bytes) {
+        if (bytes <= 0) throw new IllegalArgumentException("Chunk memory must be positive");
+        this.chunkMemory = bytes;
+        this.chunkBuffers = new Semaphore(bytes);
+        return this;
+    }
+
+    Semaphore getChunkBuffers() { return chunkBuffers; }
+
+    boolean isChunked(long fileSize) {
+        return chunking != Chunking.OFF && fileSize >= chunkThreshold;
+    }
+
+    // Everything that decides what a file digest means besides the algorithm; "" when not chunking.
+    // Indexes and comparisons only mix digests with the same spec.
+    String getChunkSpec() {
+        return chunking == Chunking.OFF ? "" : chunking.name().toLowerCase() + ":" + chunkSize + ":" + chunkThreshold;
+    }
+
+    // Report only Modified, Missing and Extra paths; Same files are counted in the summary.
+    boolean isChangesOnly() { return changesOnly; }
+
+    ScanOptions changesOnly(boolean changesOnly) {
+        this.changesOnly = changesOnly;
+        return this;
+    }
+
+    // A manifest check stops after this many failed files; 0 checks everything.
+    int getMaxFailures() { return maxFailures; }
+
+    ScanOptions maxFailures(int failures) {
+        if (failures < 0) throw new IllegalArgumentException("Failure limit cannot be negative");
+        this.maxFailures = failures;
+        return this;
+    }
+
+    LinkPolicy getLinkPolicy() { return linkPolicy; }
+
+    ScanOptions linkPolicy(LinkPolicy linkPolicy) {
+        this.linkPolicy = linkPolicy;
+        return this;
+    }
+
+    List<String> getIncludes() { return Collections.unmodifiableList(includes); }
+
+    // Globs are compiled by the first walk that uses them; a bad pattern is rejected right here.
+    ScanOptions include(String... globs) {
+        for (String g : globs) PathFilter.validate(g);
+        includes.addAll(Arrays.asList(globs));
+        return this;
+    }
+
+    List<String> getExcludes() { return Collections.unmodifiableList(excludes); }
+
+    ScanOptions exclude(String... globs) {
+        for (String g : globs) PathFilter.validate(g);
+        excludes.addAll(Arrays.asList(globs));
+        return this;
+    }
+
+    long getIoBytesPerSecond() { return ioBytesPerSecond; }
+
+    long getIoOpsPerSecond() { return ioOpsPerSecond; }
+
+    // Read budget for hashing, 0 for unlimited; every open and every buffer read counts as one request.
+    ScanOptions ioLimits(long bytesPerSecond, long opsPerSecond) {
+        this.throttle = IoThrottle.of(bytesPerSecond, opsPerSecond);
+        this.ioBytesPerSecond = bytesPerSecond;
+        this.ioOpsPerSecond = opsPerSecond;
+        return this;
+    }
+
+    IoThrottle getThrottle() { return throttle; }
+
+    // Concurrent reads per device (0 = as many as there are hashing threads).
+    int getIoPerDevice() { return ioPerDevice; }
+
+    ScanOptions ioPerDevice(int reads) {
+        if (reads < 0) throw new IllegalArgumentException("Reads per device cannot be negative");
+        this.ioPerDevice = reads;
+        return this;
+    }
+
+    // Read whole files with O_DIRECT where the JDK and the file system allow it, bypassing the page cache.
+    boolean isDirectIo() { return directIo; }
+
+    ScanOptions directIo(boolean directIo) {
+        this.directIo = directIo;
+        return this;
+    }
+
+    // Folder scans split into this many shards, each checkpointed on its own (1 = no sharding).
+    int getShards() { return shards; }
+
+    ScanOptions shards(int shards) {
+        if (shards < 1) throw new IllegalArgumentException("Shards must be at least 1");
+        this.shards = shards;
+        return this;
+    }
+
+    ScanShard.Kind getShardBy() { return shardBy; }
+
+    ScanOptions shardBy(ScanShard.Kind kind) {
+        this.shardBy = kind;
+        return this;
+    }
+
+    // Shards scanned at the same time (0 = as many as there are hashing threads); they share the threads.
+    int getShardWorkers() { return shardWorkers; }
+
+    ScanOptions shardWorkers(int workers) {
+        if (workers < 0) throw new IllegalArgumentException("Shard workers cannot be negative");
+        this.shardWorkers = workers;
+        return this;
+    }
+
+    // "local" (threads in this process), "process" (one JVM per shard) or a ShardTransport class name.
+    String getShardTransport() { return shardTransport; }
+
+    // Unknown names are rejected here, before any scan.
+    ScanOptions shardTransport(String transport) {
+        ShardTransport.forName(transport);
+        this.shardTransport = transport;
+        return this;
+    }
+}
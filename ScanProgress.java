@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Live counters for one running scan, written by the hashing threads and read by whoever shows
+// progress. Totals stay at -1 while they are unknown (e.g. while listing, or when streaming).
+// Cancellation is cooperative: the hashing code calls checkCancelled() between buffers.
+final class ScanProgress {
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong filesDone = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong filesTotal = new AtomicLong(-1);
+    private final AtomicLong bytesTotal = new AtomicLong(-1);
+    private final List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+    private volatile String phase = "Starting";
+    private volatile boolean cancelled;
+
+    void phase(String phase) { this.phase = phase; }
+
+    String getPhase() { return phase; }
+
+    // Totals are additive so a run that scans two roots can report both.
+    void addTotals(long files, long bytes) {
+        filesTotal.accumulateAndGet(files, (a, b) -> a < 0 ? b : a + b);
+        bytesTotal.accumulateAndGet(bytes, (a, b) -> a < 0 ? b : a + b);
+    }
+
+    void fileDone() { filesDone.incrementAndGet(); }
+
+    void filesDone(long n) { filesDone.addAndGet(n); }
+
+    void bytesRead(long n) { bytesDone.addAndGet(n); }
+
+    long getFilesDone() { return filesDone.get(); }
+
+    long getBytesDone() { return bytesDone.get(); }
+
+    void cancel() { cancelled = true; }
+
+    boolean isCancelled() { return cancelled; }
+
+    void checkCancelled() {
+        if (cancelled) throw new CancellationException("Scan cancelled");
+    }
+
+    void warn(String message) { warnings.add(message); }
+
+    List<String> getWarnings() { return warnings; }
+
+    // 0..100 by bytes when the total is known, otherwise -1.
+    int percent() {
+        long total = bytesTotal.get();
+        if (total <= 0) return -1;
+        return (int) Math.min(100, bytesDone.get() * 100 / total);
+    }
+
+    @Override
+    public String toString() {
+        double secs = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        long files = filesDone.get(), bytes = bytesDone.get();
+        long ft = filesTotal.get(), bt = bytesTotal.get();
+        double byteRate = bytes / secs;
+        StringBuilder sb = new StringBuilder(phase).append(": ");
+        sb.append(files);
+        if (ft >= 0) sb.append('/').append(ft);
+        sb.append(" files, ").append(formatBytes(bytes));
+        if (bt >= 0) sb.append('/').append(formatBytes(bt));
+        sb.append(String.format(" | %s/s, %.0f files/s", formatBytes((long) byteRate), files / secs));
+        if (bt > 0 && byteRate > 0 && bytes < bt) sb.append(" | ETA ").append(formatDuration((long) ((bt - bytes) / byteRate)));
+        return sb.toString();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        String units = "KMGTPE";
+        int u = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+        return String.format("%.1f %sB", bytes / Math.pow(1024, u), units.charAt(u - 1));
+    }
+
+    static String formatDuration(long seconds) {
+        if (seconds >= 3600) return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+}
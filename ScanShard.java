@@ -0,0 +1,109 @@
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+// The slice of a tree one shard worker scans. Two ways to slice:
+//   names - a contiguous run of the root's entries in PathOrder, so whole subtrees stay together and
+//           the partial indexes simply follow one another; cut by the coordinator from one listing
+//   hash  - files whose relative path hashes into the shard's range, which spreads even a single
+//           huge folder evenly; every worker lists the whole tree but hashes only its own files
+// Shards travel to worker processes as one line of text: encode() and decode().
+final class ScanShard {
+
+    enum Kind {
+        NAMES, HASH;
+
+        static Kind forName(String name) {
+            switch (name.toLowerCase()) {
+                case "names": case "dirs": case "folders": return NAMES;
+                case "hash": return HASH;
+                default: throw new IllegalArgumentException("Unknown shard split: " + name + " (names or hash)");
+            }
+        }
+    }
+
+    final Kind kind;
+    final int index;
+    final int count;
+    private final String from; // NAMES: first root entry of the run, "" for the very first
+    private final String to;   // NAMES: first root entry past the run, "" for the last shard
+
+    private ScanShard(Kind kind, int index, int count, String from, String to) {
+        if (count < 1 || index < 0 || index >= count) throw new IllegalArgumentException("Bad shard " + index + "/" + count);
+        this.kind = kind;
+        this.index = index;
+        this.count = count;
+        this.from = from;
+        this.to = to;
+    }
+
+    static ScanShard names(int index, int count, String from, String to) {
+        return new ScanShard(Kind.NAMES, index, count, from, to);
+    }
+
+    static ScanShard hash(int index, int count) {
+        return new ScanShard(Kind.HASH, index, count, "", "");
+    }
+
+    // Decided from the name alone, for an entry directly in the scanned root.
+    boolean holdsRootEntry(String name) {
+        if (kind != Kind.NAMES) return true;
+        return PathOrder.compare(name, from) >= 0 && (to.isEmpty() || PathOrder.compare(name, to) < 0);
+    }
+
+    boolean holdsFile(String relative) {
+        if (kind != Kind.HASH) return true;
+        // the path with '/' separators, so a tree splits the same way on every platform
+        int h = relative.replace(File.separatorChar, '/').hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (int) (((h & 0xffffffffL) * count) >>> 32) == index;
+    }
+
+    String encode() {
+        String head = kind.name().toLowerCase() + ":" + index + "/" + count;
+        return kind == Kind.NAMES ? head + ":" + escape(from) + ":" + escape(to) : head;
+    }
+
+    static ScanShard decode(String line) {
+        String[] parts = line.split(":", -1);
+        try {
+            Kind kind = Kind.forName(parts[0]);
+            int slash = parts[1].indexOf('/');
+            int index = Integer.parseInt(parts[1].substring(0, slash));
+            int count = Integer.parseInt(parts[1].substring(slash + 1));
+            if (kind == Kind.HASH && parts.length == 2) return hash(index, count);
+            if (kind == Kind.NAMES && parts.length == 4) return names(index, count, unescape(parts[2]), unescape(parts[3]));
+        } catch (RuntimeException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Not a shard: " + line);
+    }
+
+    @Override
+    public String toString() {
+        String s = "shard " + (index + 1) + " of " + count;
+        if (kind == Kind.HASH) return s;
+        return s + " [" + (from.isEmpty() ? "start" : from) + " .. " + (to.isEmpty() ? "end" : to) + ")";
+    }
+
+    private static String escape(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String unescape(String encoded) {
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
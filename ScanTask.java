@@ -0,0 +1,77 @@
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+// Runs a scan off the Event Dispatch Thread. The worker threads only bump ScanProgress counters;
+// a Swing timer samples them a few times a second, so the EDT sees a handful of updates per second
+// no matter how many files per second are being hashed.
+final class ScanTask<T> extends SwingWorker<T, Void> {
+
+    interface Job<T> {
+        T run(ScanProgress progress) throws Exception;
+    }
+
+    private final ScanProgress progress;
+    private final Job<T> job;
+    private final JLabel status;
+    private final JProgressBar bar;
+    private final Consumer<T> onSuccess;
+    private final Consumer<Exception> onFailure;
+    private final Runnable onFinish;
+    private final Timer ticker;
+
+    ScanTask(ScanProgress progress, Job<T> job, JLabel status, JProgressBar bar,
+             Consumer<T> onSuccess, Consumer<Exception> onFailure, Runnable onFinish) {
+        this.progress = progress;
+        this.job = job;
+        this.status = status;
+        this.bar = bar;
+        this.onSuccess = onSuccess;
+        this.onFailure = onFailure;
+        this.onFinish = onFinish;
+        this.ticker = new Timer(250, e -> render());
+    }
+
+    void start() {
+        bar.setVisible(true);
+        bar.setIndeterminate(true);
+        ticker.start();
+        execute();
+    }
+
+    // Cooperative: the running scan notices at its next buffer boundary and unwinds.
+    void cancelScan() {
+        progress.cancel();
+    }
+
+    @Override
+    protected T doInBackground() throws Exception {
+        return job.run(progress);
+    }
+
+    @Override
+    protected void done() {
+        ticker.stop();
+        bar.setVisible(false);
+        try {
+            T result = get();
+            onSuccess.accept(result);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CancellationException) status.setText("Cancelled");
+            else onFailure.accept(cause instanceof Exception ? (Exception) cause : new Exception(cause));
+        } catch (InterruptedException | CancellationException e) {
+            status.setText("Cancelled");
+        } finally {
+            onFinish.run();
+        }
+    }
+
+    private void render() {
+        status.setText(progress.toString());
+        int pct = progress.percent();
+        bar.setIndeterminate(pct < 0);
+        if (pct >= 0) bar.setValue(pct);
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// How ScanCoordinator gets a shard scanned. A transport runs the shard's scan wherever it likes and
+// must leave the partial index at the checkpoint path when it returns; throwing leaves the shard to
+// be retried by the next run. Built-in: "local" runs shards on threads of this process, "process"
+// starts one JVM per shard. Anything else is taken as the name of a class with a public no-argument
+// constructor, e.g. one that ships the shard to another machine and copies the index back.
+interface ShardTransport {
+
+    // Scans one shard of root. previous is an index holding the shard's files to take unchanged ones
+    // from: the stored index of root, or the shard's own checkpoint when an interrupted run left one.
+    // It is null when every file has to be read. Returns the link loops the walk skipped, if known.
+    List<String> scan(File root, ScanShard shard, ScanOptions options, HashIndex previous, Path checkpoint) throws Exception;
+
+    static ShardTransport forName(String name) {
+        switch (name) {
+            case "local": return new Local();
+            case "process": return new Processes();
+            default:
+                try {
+                    return (ShardTransport) Class.forName(name).getConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown shard transport: " + name + " (local, process or a ShardTransport class)");
+                }
+        }
+    }
+
+    // The stand-in for remote workers: the shard is scanned right here, sharing the read budget,
+    // progress and metrics with the rest of the run.
+    final class Local implements ShardTransport {
+        @Override
+        public List<String> scan(File root, ScanShard shard, ScanOptions options, HashIndex previous, Path checkpoint) throws Exception {
+            HashEngine engine = new HashEngine(options);
+            engine.scan(root, previous).save(checkpoint);
+            return engine.getLinkLoops();
+        }
+    }
+
+    // One `IntegrityCli shard-worker` JVM per shard, started from this JVM's class path. The worker
+    // reads the previous index itself (the checkpoint when there is one, else the stored index), and
+    // prints its own warnings. fis.* system properties are passed on, and the shard's options, its
+    // share of the read budget included, as arguments.
+    final class Processes implements ShardTransport {
+        @Override
+        public List<String> scan(File root, ScanShard shard, ScanOptions options, HashIndex previous, Path checkpoint) throws Exception {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            for (Map.Entry<Object, Object> p : System.getProperties().entrySet()) {
+                if (p.getKey().toString().startsWith("fis.")) cmd.add("-D" + p.getKey() + "=" + p.getValue());
+            }
+            cmd.add("-Dfis.chunkThreshold=" + options.getChunkThreshold());
+            cmd.add("-Dfis.chunkMemory=" + options.getChunkMemory());
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(IntegrityCli.class.getName());
+            cmd.add("shard-worker");
+            cmd.add(root.getAbsolutePath());
+            cmd.add(checkpoint.toAbsolutePath().toString());
+            arg(cmd, "--shard", shard.encode());
+            arg(cmd, "--algorithm", options.getAlgorithm());
+            arg(cmd, "--threads", options.getParallelism());
+            arg(cmd, "--chunking", options.getChunking().name().toLowerCase());
+            arg(cmd, "--chunk-size", options.getChunkSize());
+            arg(cmd, "--links", options.getLinkPolicy().name().toLowerCase());
+            for (String g : options.getIncludes()) arg(cmd, "--include", g);
+            for (String g : options.getExcludes()) arg(cmd, "--exclude", g);
+            arg(cmd, "--index-dir", options.getIndexDir());
+            if (!options.isIndexEnabled()) cmd.add("--no-index");
+            if (previous == null || options.isForceRehash()) cmd.add("--force-rehash");
+            if (options.getIoBytesPerSecond() > 0) arg(cmd, "--io-rate", options.getIoBytesPerSecond());
+            if (options.getIoOpsPerSecond() > 0) arg(cmd, "--io-ops", options.getIoOpsPerSecond());
+            if (options.getIoPerDevice() > 0) arg(cmd, "--io-per-device", options.getIoPerDevice());
+            if (options.isDirectIo()) cmd.add("--direct-io");
+
+            Process worker = new ProcessBuilder(cmd).inheritIO().start();
+            try {
+                while (!worker.waitFor(200, TimeUnit.MILLISECONDS)) {
+                    if (options.getProgress() != null) options.getProgress().checkCancelled();
+                }
+            } finally {
+                if (worker.isAlive()) worker.destroy();
+            }
+            if (worker.exitValue() != 0) throw new IOException("Worker for " + shard + " failed with exit code " + worker.exitValue());
+            return Collections.emptyList();
+        }
+
+        private static void arg(List<String> cmd, String option, Object value) {
+            cmd.add(option);
+            cmd.add(String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Walks the regular files of a tree in PathOrder. Only the sorted listings of the directories on
+// the current path are held in memory, so the cost is bounded by depth x width, not by file count,
+// and the explicit stack means depth never touches the thread stack.
+//
+// Each entry is stat'ed once. Exclude globs are tested on the name before that, so an excluded
+// folder costs neither a stat nor a listing. Symbolic links follow the options' LinkPolicy; when
+// folder links are followed, a folder already on the current path (by file key) is a loop and
+// is skipped instead of walked again.
+final class SortedTreeWalker {
+
+    static final class WalkEntry {
+        final String relative;
+        final Path path;
+        final FileRecord metadata; // digest left null
+
+        WalkEntry(String relative, Path path, FileRecord metadata) {
+            this.relative = relative;
+            this.path = path;
+            this.metadata = metadata;
+        }
+    }
+
+    private static final class Level {
+        final String prefix;
+        final Iterator<Path> children;
+        final Object key; // identity of the folder while it is on the stack, or null
+
+        Level(String prefix, Iterator<Path> children, Object key) {
+            this.prefix = prefix;
+            this.children = children;
+            this.key = key;
+        }
+    }
+
+    private final ArrayDeque<Level> stack = new ArrayDeque<>();
+    private final Set<Object> onStack = new HashSet<>();
+    private final List<String> loops = new ArrayList<>();
+    private final ScanOptions.LinkPolicy links;
+    private final PathFilter filter;
+    private final ScanMetrics metrics;
+
+    SortedTreeWalker(File root, ScanOptions options) {
+        this(root, options, "");
+    }
+
+    // Walks only the subtree at root, which lies at relative path base inside the scanned tree;
+    // entries and glob matching then use paths relative to the scanned tree.
+    SortedTreeWalker(File root, ScanOptions options, String base) {
+        this.links = options.getLinkPolicy();
+        Path dir = root.toPath();
+        Path tree = dir.toAbsolutePath().normalize();
+        for (int up = base.isEmpty() ? 0 : Paths.get(base).getNameCount(); up > 0 && tree.getParent() != null; up--) tree = tree.getParent();
+        this.filter = PathFilter.of(options, tree);
+        this.metrics = options.getMetrics();
+        Object key = null;
+        if (links == ScanOptions.LinkPolicy.FOLLOW) {
+            try {
+                key = loopKey(dir, Files.readAttributes(dir, BasicFileAttributes.class));
+            } catch (IOException e) {
+                return; // unreadable root: nothing to walk
+            }
+        }
+        push(base.isEmpty() ? "" : base + File.separator, dir, key);
+    }
+
+    // Relative paths of followed folder links that led back into their own ancestry.
+    List<String> getLoops() { return loops; }
+
+    // Returns the next regular file, or null once the tree is exhausted.
+    WalkEntry next() throws IOException {
+        if (metrics == null) return advance();
+        long start = System.nanoTime();
+        WalkEntry entry = advance();
+        metrics.stage(ScanMetrics.Stage.TRAVERSAL, start);
+        if (entry != null) metrics.fileListed();
+        return entry;
+    }
+
+    private WalkEntry advance() throws IOException {
+        while (!stack.isEmpty()) {
+            Level level = stack.peek();
+            if (!level.children.hasNext()) {
+                stack.pop();
+                if (level.key != null) onStack.remove(level.key);
+                continue;
+            }
+            Path child = level.children.next();
+            Path name = child.getFileName();
+            String relative = level.prefix + name;
+            if (filter.isExcluded(name, relative)) continue;
+            BasicFileAttributes attrs;
+            try {
+                attrs = attributes(child);
+            } catch (IOException e) {
+                continue; // vanished or unreadable entries are skipped, like File.listFiles did
+            }
+            if (attrs == null) continue;
+            if (attrs.isDirectory()) {
+                Object key = links == ScanOptions.LinkPolicy.FOLLOW ? loopKey(child, attrs) : null;
+                if (key != null && onStack.contains(key)) {
+                    loops.add(relative);
+                    continue;
+                }
+                push(relative + File.separator, child, key);
+            } else if (attrs.isRegularFile() && filter.isIncludedFile(name, relative)) {
+                return new WalkEntry(relative, child, new FileRecord(attrs.size(),
+                        attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), FileRecord.keyOf(attrs.fileKey()), null));
+            }
+        }
+        return null;
+    }
+
+    // Attributes of the entry as the link policy sees it; null when the entry is to be ignored.
+    private BasicFileAttributes attributes(Path p) throws IOException {
+        if (links == ScanOptions.LinkPolicy.FOLLOW) return Files.readAttributes(p, BasicFileAttributes.class);
+        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isSymbolicLink()) return attrs;
+        if (links == ScanOptions.LinkPolicy.SKIP) return null;
+        attrs = Files.readAttributes(p, BasicFileAttributes.class); // FILES_ONLY
+        return attrs.isDirectory() ? null : attrs;
+    }
+
+    // The file key (device + inode) where the platform has one, else the canonical path.
+    private static Object loopKey(Path dir, BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        if (key != null) return key;
+        try {
+            return dir.toRealPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void push(String prefix, Path dir, Object key) {
+        List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) children.add(p);
+        } catch (IOException e) {
+            return; // unreadable directory, same as listFiles() returning null
+        }
+        children.sort((x, y) -> x.getFileName().toString().compareTo(y.getFileName().toString()));
+        stack.push(new Level(prefix, children.iterator(), key));
+        if (metrics != null) metrics.dirListed();
+        if (key != null) onStack.add(key);
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// Bounded-memory variants of "hash a tree" and "compare two trees". Both trees are walked in
+// PathOrder and merge-joined; hashing runs on a worker pool, but at most a small window of results
+// is in flight and they are emitted strictly in path order. Nothing is accumulated per file, so
+// peak memory does not grow with the size of the tree. Missing and Extra files are never read,
+// and with fast compare enabled matched pairs go through StagedComparison instead of full hashes.
+final class StreamingScan {
+
+    interface HashSink {
+        void accept(String path, FileRecord record) throws IOException;
+    }
+
+    private final ScanOptions options;
+    private final StagedComparison staged;
+
+    StreamingScan(ScanOptions options) {
+        this.options = options;
+        this.staged = options.isFastCompare() ? new StagedComparison(options) : null;
+    }
+
+    // Stage statistics of the last fast comparison, or null when fast compare is off.
+    StagedComparison getStagedComparison() { return staged; }
+
+    void hashTree(File root, HashSink sink) throws Exception {
+        Window window = new Window();
+        try {
+            SortedTreeWalker walker = new SortedTreeWalker(root, options);
+            for (SortedTreeWalker.WalkEntry e; (e = walker.next()) != null; ) {
+                final SortedTreeWalker.WalkEntry entry = e;
+                window.submit(() -> {
+                    FileRecord m = entry.metadata;
+                    FileRecord record = new FileRecord(m.size, m.modifiedNanos, m.fileKey, digest(entry));
+                    return () -> {
+                        advance();
+                        emit(sink, entry.relative, record);
+                    };
+                });
+            }
+            window.drain();
+        } finally {
+            window.shutdown();
+        }
+    }
+
+    ComparisonSummary compare(File root1, File root2, ComparisonSink sink) throws Exception {
+        ComparisonSummary summary = new ComparisonSummary();
+        Window window = new Window();
+        try {
+            SortedTreeWalker w1 = new SortedTreeWalker(root1, options);
+            SortedTreeWalker w2 = new SortedTreeWalker(root2, options);
+            SortedTreeWalker.WalkEntry e1 = w1.next();
+            SortedTreeWalker.WalkEntry e2 = w2.next();
+            while (e1 != null || e2 != null) {
+                int cmp = e1 == null ? 1 : e2 == null ? -1 : PathOrder.compare(e1.relative, e2.relative);
+                if (cmp < 0) {
+                    window.completed(report(summary, sink, e1.relative, IntegrityStatus.MISSING));
+                    e1 = w1.next();
+                } else if (cmp > 0) {
+                    window.completed(report(summary, sink, e2.relative, IntegrityStatus.EXTRA));
+                    e2 = w2.next();
+                } else {
+                    final SortedTreeWalker.WalkEntry left = e1, right = e2;
+                    if (staged != null && left.metadata.size != right.metadata.size) {
+                        // settled by metadata alone, no need to occupy a worker
+                        window.completed(report(summary, sink, left.relative,
+                                staged.compare(left.path, left.metadata.size, right.path, right.metadata.size)));
+                    } else {
+                        window.submit(() -> report(summary, sink, left.relative, pairStatus(left, right)));
+                    }
+                    e1 = w1.next();
+                    e2 = w2.next();
+                }
+            }
+            window.drain();
+        } finally {
+            window.shutdown();
+        }
+        return summary;
+    }
+
+    private IntegrityStatus pairStatus(SortedTreeWalker.WalkEntry left, SortedTreeWalker.WalkEntry right) throws Exception {
+        if (staged != null) return staged.compare(left.path, left.metadata.size, right.path, right.metadata.size);
+        return Arrays.equals(digest(left), digest(right)) ? IntegrityStatus.SAME : IntegrityStatus.MODIFIED;
+    }
+
+    private byte[] digest(SortedTreeWalker.WalkEntry entry) throws Exception {
+        return FileHasher.digest(entry.path, options.getAlgorithm(), options);
+    }
+
+    // The emit step runs on the caller's thread, in submission order.
+    private Runnable report(ComparisonSummary summary, ComparisonSink sink, String path, IntegrityStatus status) {
+        return () -> {
+            advance();
+            summary.add(status);
+            if (!options.isChangesOnly() || status != IntegrityStatus.SAME) emit(sink, path, status);
+        };
+    }
+
+    // Totals are never known up front here, so progress is counted as results are emitted.
+    private void advance() {
+        ScanProgress progress = options.getProgress();
+        if (progress == null) return;
+        progress.fileDone();
+        progress.checkCancelled();
+    }
+
+    private static void emit(ComparisonSink sink, String path, IntegrityStatus status) {
+        try {
+            sink.accept(path, status);
+        } catch (IOException e) {
+            throw new SinkFailure(e);
+        }
+    }
+
+    private static void emit(HashSink sink, String path, FileRecord record) {
+        try {
+            sink.accept(path, record);
+        } catch (IOException e) {
+            throw new SinkFailure(e);
+        }
+    }
+
+    private static final class SinkFailure extends RuntimeException {
+        SinkFailure(IOException cause) { super(cause); }
+    }
+
+    // Ordered, bounded window of in-flight work. Each task produces a Runnable that publishes its
+    // result; those run on the submitting thread in submission order as the head of the window completes.
+    private final class Window {
+        private final ExecutorService pool = Executors.newFixedThreadPool(options.getParallelism());
+        private final ArrayDeque<Future<Runnable>> inFlight = new ArrayDeque<>();
+        private final int capacity = options.getParallelism() * 4;
+
+        void submit(Callable<Runnable> task) throws Exception {
+            inFlight.add(pool.submit(task));
+            while (inFlight.size() >= capacity) publishHead();
+        }
+
+        void completed(Runnable result) throws Exception {
+            FutureTask<Runnable> done = new FutureTask<>(() -> result);
+            done.run();
+            inFlight.add(done);
+            while (inFlight.size() >= capacity) publishHead();
+        }
+
+        void drain() throws Exception {
+            while (!inFlight.isEmpty()) publishHead();
+        }
+
+        void shutdown() {
+            pool.shutdownNow();
+        }
+
+        private void publishHead() throws Exception {
+            try {
+                inFlight.poll().get().run();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) throw (Exception) cause;
+                throw (Error) cause;
+            } catch (SinkFailure e) {
+                throw (IOException) e.getCause();
+            }
+        }
+    }
+}
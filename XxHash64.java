@@ -0,0 +1,89 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Pure-Java streaming XXH64 (seed 0). Several GB/s per core, meant for fast change detection
+// where tamper resistance is not needed. Digest bytes are big-endian, matching `xxhsum -H1`.
+final class XxHash64 implements Hasher.State {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private long v1 = P1 + P2, v2 = P2, v3 = 0, v4 = -P1;
+    private long total;
+    private final ByteBuffer pending = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public void update(ByteBuffer data) {
+        total += data.remaining();
+        ByteOrder order = data.order();
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (pending.position() > 0) {
+                while (pending.hasRemaining() && data.hasRemaining()) pending.put(data.get());
+                if (pending.hasRemaining()) return;
+                pending.flip();
+                stripe(pending);
+                pending.clear();
+            }
+            while (data.remaining() >= 32) stripe(data);
+            while (data.hasRemaining()) pending.put(data.get());
+        } finally {
+            data.order(order);
+        }
+    }
+
+    private void stripe(ByteBuffer b) {
+        v1 = round(v1, b.getLong());
+        v2 = round(v2, b.getLong());
+        v3 = round(v3, b.getLong());
+        v4 = round(v4, b.getLong());
+    }
+
+    @Override
+    public byte[] digest() {
+        long h;
+        if (total >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = P5;
+        }
+        h += total;
+        pending.flip();
+        while (pending.remaining() >= 8) {
+            h ^= round(0, pending.getLong());
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (pending.remaining() >= 4) {
+            h ^= (pending.getInt() & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+        }
+        while (pending.hasRemaining()) {
+            h ^= (pending.get() & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return ByteBuffer.allocate(8).putLong(h).array();
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long acc, long v) {
+        acc ^= round(0, v);
+        return acc * P1 + P4;
+    }
+}
@@ -0,0 +1,79 @@
+package fis.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The original single-threaded implementations (4 KiB FileInputStream reads, String.format hex,
+// recursive listFiles and a HashMap join), kept verbatim so every run measures against them.
+final class Baseline {
+
+    private Baseline() {}
+
+    static String fileHash(String filePath, String algorithm) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        try (FileInputStream fis = new FileInputStream(filePath)) {
+            byte[] byteArray = new byte[4 * 1024];
+            int bytesCount;
+            while ((bytesCount = fis.read(byteArray)) != -1) {
+                digest.update(byteArray, 0, bytesCount);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    static Map<String, String> collectHashes(File folder) throws Exception {
+        Map<String, String> map = new HashMap<>();
+        collectHashes(folder, map, folder.getAbsolutePath().length());
+        return map;
+    }
+
+    private static void collectHashes(File folder, Map<String, String> map, int baseLen) throws Exception {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            if (f.isFile()) {
+                String relative = f.getAbsolutePath().substring(baseLen);
+                if (relative.startsWith(File.separator)) relative = relative.substring(1);
+                map.put(relative, fileHash(f.getAbsolutePath(), "SHA-256"));
+            } else if (f.isDirectory()) {
+                collectHashes(f, map, baseLen);
+            }
+        }
+    }
+
+    // Recursive listing only, for the traversal comparison.
+    static int countFiles(File folder) {
+        File[] files = folder.listFiles();
+        if (files == null) return 0;
+        int n = 0;
+        for (File f : files) {
+            if (f.isFile()) n++;
+            else if (f.isDirectory()) n += countFiles(f);
+        }
+        return n;
+    }
+
+    static List<String[]> join(Map<String, String> map1, Map<String, String> map2) {
+        List<String[]> rows = new ArrayList<>();
+        for (String rel : map1.keySet()) {
+            if (!map2.containsKey(rel)) rows.add(new String[]{rel, "Missing"});
+            else if (map1.get(rel).equals(map2.get(rel))) rows.add(new String[]{rel, "Same"});
+            else rows.add(new String[]{rel, "Modified"});
+        }
+        for (String rel : map2.keySet()) {
+            if (!map1.containsKey(rel)) rows.add(new String[]{rel, "Extra"});
+        }
+        return rows;
+    }
+}
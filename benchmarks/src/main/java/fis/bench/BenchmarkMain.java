@@ -0,0 +1,29 @@
+package fis.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Same command line as the stock JMH main, except that the GC profiler (allocation rate, bytes
+// allocated per operation, GC count) is on unless other profilers are asked for with -prof.
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        if (cmd.shouldList()) {
+            new Runner(cmd).list();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (cmd.getProfilers().isEmpty()) options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,95 @@
+package fis.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Comparison strategies on a tree against its edited copy, end to end and join-only over
+// precomputed results. Reads come from the page cache after warmup; for cold-cache numbers
+// drop the caches between iterations from outside the JVM.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ComparisonBenchmark {
+
+    @Param({"TINY", "HUGE", "DEEP", "MIXED"})
+    public SyntheticTrees.Shape shape;
+
+    private Engine.Task full;
+    private Engine.Task incremental;
+    private Engine.Task streaming;
+    private Engine.Task streamingFast;
+    private Engine.Task mergeOnly;
+    private File a;
+    private File b;
+    private Map<String, String> mapA;
+    private Map<String, String> mapB;
+
+    @Setup
+    public void setup() throws Exception {
+        Engine engine = Engine.load();
+        a = SyntheticTrees.original(shape).toFile();
+        b = SyntheticTrees.edited(shape).toFile();
+        full = engine.compareFull(a.toPath(), b.toPath());
+        incremental = engine.compareIncremental(a.toPath(), b.toPath());
+        streaming = engine.compareStreaming(a.toPath(), b.toPath(), false);
+        streamingFast = engine.compareStreaming(a.toPath(), b.toPath(), true);
+        mergeOnly = engine.mergeOnly(a.toPath(), b.toPath());
+        mapA = Baseline.collectHashes(a);
+        mapB = Baseline.collectHashes(b);
+    }
+
+    // Parallel hash of both trees into DigestTables, then the sorted merge.
+    @Benchmark
+    public long engineFull() throws Exception {
+        return full.run();
+    }
+
+    // Rescan against the previous results: unchanged metadata means no reads.
+    @Benchmark
+    public long engineIncremental() throws Exception {
+        return incremental.run();
+    }
+
+    @Benchmark
+    public long streaming() throws Exception {
+        return streaming.run();
+    }
+
+    // Size, then head/tail samples, then the full digest.
+    @Benchmark
+    public long streamingFast() throws Exception {
+        return streamingFast.run();
+    }
+
+    // First version: sequential hash into HashMaps, then the map join.
+    @Benchmark
+    public int original() throws Exception {
+        return Baseline.join(Baseline.collectHashes(a), Baseline.collectHashes(b)).size();
+    }
+
+    @Benchmark
+    public long mergeOnly() throws Exception {
+        return mergeOnly.run();
+    }
+
+    @Benchmark
+    public int hashMapJoinOnly() {
+        return Baseline.join(mapA, mapB).size();
+    }
+}
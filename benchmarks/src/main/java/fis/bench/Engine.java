@@ -0,0 +1,38 @@
+package fis.bench;
+
+import java.nio.file.Path;
+
+// The application lives in the default package, which no named package can refer to, and JMH
+// will not generate code for benchmarks in the default package. So benchmarks reach the engine
+// through this interface; EngineBridge (default package, same jar) implements it and is loaded
+// once per trial. Each Task is prepared in @Setup, so only run() is measured.
+public interface Engine {
+
+    interface Task {
+        // Returns a count or digest byte, so the work cannot be optimised away.
+        long run() throws Exception;
+    }
+
+    static Engine load() throws ReflectiveOperationException {
+        return (Engine) Class.forName("EngineBridge").getConstructor().newInstance();
+    }
+
+    Task hashFile(Path file, String algorithm, int bufferSize, boolean mmap);
+
+    String hex(byte[] digest);
+
+    Task sortedWalk(Path root);
+
+    Task scan(Path root, String algorithm, int threads, boolean streaming);
+
+    // Both trees hashed in full, then merged in path order.
+    Task compareFull(Path a, Path b);
+
+    // Both trees rescanned against indexes taken during preparation: metadata only.
+    Task compareIncremental(Path a, Path b) throws Exception;
+
+    Task compareStreaming(Path a, Path b, boolean fast);
+
+    // The sorted merge alone, over results computed during preparation.
+    Task mergeOnly(Path a, Path b) throws Exception;
+}
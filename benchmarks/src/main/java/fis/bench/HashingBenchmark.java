@@ -0,0 +1,81 @@
+package fis.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// One 64 MiB file (in the page cache after warmup) hashed by FileHasher across algorithms,
+// read buffer sizes and mmap on/off. Original is the first version's 4 KiB stream loop.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashingBenchmark {
+
+    static final long SIZE = 64L << 20;
+
+    @Param({"SHA-256", "SHA-512", "MD5", "XXH64", "CRC32C"})
+    public String algorithm;
+
+    @Param({"8192", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"false", "true"})
+    public boolean mmap;
+
+    private Engine.Task task;
+
+    @Setup
+    public void setup() throws Exception {
+        task = Engine.load().hashFile(SyntheticTrees.blob(SIZE), algorithm, bufferSize, mmap);
+    }
+
+    @Benchmark
+    public long fileHasher(Throughput t) throws Exception {
+        long r = task.run();
+        t.bytes += SIZE;
+        t.files++;
+        return r;
+    }
+
+    // Separate state so the buffer/mmap parameters do not multiply the baseline runs.
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public static class Original {
+
+        @Param({"SHA-256", "SHA-512", "MD5"})
+        public String algorithm;
+
+        private Path file;
+
+        @Setup
+        public void setup() throws Exception {
+            file = SyntheticTrees.blob(SIZE);
+        }
+
+        @Benchmark
+        public String original(Throughput t) throws Exception {
+            String hex = Baseline.fileHash(file.toString(), algorithm);
+            t.bytes += SIZE;
+            t.files++;
+            return hex;
+        }
+    }
+}
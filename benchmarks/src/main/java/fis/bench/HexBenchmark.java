@@ -0,0 +1,49 @@
+package fis.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Digest to hex string: the table-driven Hex.encode against the original String.format loop.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexBenchmark {
+
+    @Param({"4", "8", "32", "64"})
+    public int length;
+
+    private Engine engine;
+    private byte[] digest;
+
+    @Setup
+    public void setup() throws Exception {
+        engine = Engine.load();
+        digest = new byte[length];
+        new Random(length).nextBytes(digest);
+    }
+
+    @Benchmark
+    public String table() {
+        return engine.hex(digest);
+    }
+
+    @Benchmark
+    public String original() {
+        return Baseline.hex(digest);
+    }
+}
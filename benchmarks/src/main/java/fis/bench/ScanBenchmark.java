@@ -0,0 +1,77 @@
+package fis.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+// Hashing a whole folder with no index, per tree shape, algorithm and thread count, through
+// HashEngine and through the bounded-memory StreamingScan.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"TINY", "HUGE", "DEEP", "MIXED"})
+    public SyntheticTrees.Shape shape;
+
+    @Param({"SHA-256", "XXH64"})
+    public String algorithm;
+
+    // 0 = one thread per core
+    @Param({"1", "0"})
+    public int threads;
+
+    private Engine.Task hashEngine;
+    private Engine.Task streaming;
+    private long bytes;
+
+    @Setup
+    public void setup() throws Exception {
+        Path root = SyntheticTrees.original(shape);
+        Engine engine = Engine.load();
+        hashEngine = engine.scan(root, algorithm, threads, false);
+        streaming = engine.scan(root, algorithm, threads, true);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                bytes += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Benchmark
+    public long hashEngine(Throughput t) throws Exception {
+        long files = hashEngine.run();
+        t.bytes += bytes;
+        t.files += files;
+        return files;
+    }
+
+    @Benchmark
+    public long streaming(Throughput t) throws Exception {
+        long files = streaming.run();
+        t.bytes += bytes;
+        t.files += files;
+        return files;
+    }
+}
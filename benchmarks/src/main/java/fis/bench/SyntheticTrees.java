@@ -0,0 +1,136 @@
+package fis.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+// Deterministic benchmark trees, generated once under -Dfis.bench.dir (default: the temp dir) and
+// reused by later runs. Every shape has an original (a) and an edited copy (b) for comparisons:
+// every 100th file has its last byte flipped (same size and head, so fast compare must hash it),
+// every 250th is deleted and one extra file is added per 500.
+public final class SyntheticTrees {
+
+    public enum Shape {
+        TINY,   // 20,000 files of 1 KiB, 100 per directory
+        HUGE,   // 4 files of 128 MiB
+        DEEP,   // 200 chains 20 directories deep, 2 files of 4 KiB per level
+        MIXED   // 2,000 files from 128 B to 1 MiB (log-uniform) plus 2 files of 64 MiB, 3 levels
+    }
+
+    private static final Path BASE = Paths.get(System.getProperty("fis.bench.dir", System.getProperty("java.io.tmpdir")), "fis-bench");
+
+    private SyntheticTrees() {}
+
+    static Path original(Shape shape) throws IOException {
+        ensure(shape);
+        return BASE.resolve(shape.name().toLowerCase()).resolve("a");
+    }
+
+    static Path edited(Shape shape) throws IOException {
+        ensure(shape);
+        return BASE.resolve(shape.name().toLowerCase()).resolve("b");
+    }
+
+    // A single file of the given size, for per-file hashing benchmarks.
+    static Path blob(long size) throws IOException {
+        Path file = BASE.resolve("blob-" + size + ".bin");
+        if (!Files.isRegularFile(file) || Files.size(file) != size) write(file, size, new Random(size));
+        return file;
+    }
+
+    private static synchronized void ensure(Shape shape) throws IOException {
+        Path dir = BASE.resolve(shape.name().toLowerCase());
+        Path done = BASE.resolve(shape.name().toLowerCase() + ".complete");
+        if (Files.exists(done)) return;
+        delete(dir);
+        Path a = dir.resolve("a");
+        Random random = new Random(shape.ordinal());
+        switch (shape) {
+            case TINY:
+                for (int i = 0; i < 20_000; i++) write(a.resolve("d" + (i / 100)).resolve("f" + i + ".txt"), 1024, random);
+                break;
+            case HUGE:
+                for (int i = 0; i < 4; i++) write(a.resolve("huge" + i + ".bin"), 128L << 20, random);
+                break;
+            case DEEP:
+                for (int chain = 0; chain < 200; chain++) {
+                    Path d = a.resolve("c" + chain);
+                    for (int level = 0; level < 20; level++, d = d.resolve("l" + level)) {
+                        write(d.resolve("x.dat"), 4096, random);
+                        write(d.resolve("y.dat"), 4096, random);
+                    }
+                }
+                break;
+            default:
+                for (int i = 0; i < 2_000; i++) {
+                    long size = (long) Math.pow(2, 7 + random.nextDouble() * 13);
+                    write(a.resolve("p" + (i % 10)).resolve("q" + (i % 7)).resolve("m" + i + ".bin"), size, random);
+                }
+                write(a.resolve("big0.bin"), 64L << 20, random);
+                write(a.resolve("big1.bin"), 64L << 20, random);
+        }
+        copyEdited(a, dir.resolve("b"));
+        Files.createFile(done);
+    }
+
+    private static void copyEdited(Path from, Path to) throws IOException {
+        int[] n = {0};
+        Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                int i = n[0]++;
+                Path target = to.resolve(from.relativize(file).toString());
+                if (i % 250 == 249) return FileVisitResult.CONTINUE;
+                Files.createDirectories(target.getParent());
+                Files.copy(file, target);
+                if (i % 100 == 99 && attrs.size() > 0) {
+                    try (FileChannel ch = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                        ByteBuffer last = ByteBuffer.allocate(1);
+                        ch.read(last, attrs.size() - 1);
+                        last.put(0, (byte) (last.get(0) ^ 1)).flip();
+                        ch.write(last, attrs.size() - 1);
+                    }
+                }
+                if (i % 500 == 0) write(target.resolveSibling("extra" + i + ".dat"), 2048, new Random(i));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void write(Path file, long size, Random random) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] buf = new byte[(int) Math.min(size, 1 << 20)];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long left = size; left > 0; left -= buf.length) {
+                random.nextBytes(buf);
+                out.write(buf, 0, (int) Math.min(buf.length, left));
+            }
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
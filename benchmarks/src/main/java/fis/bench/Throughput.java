@@ -0,0 +1,22 @@
+package fis.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Extra rates reported next to the score in Throughput mode: bytes read and files processed
+// per second (divide "bytes" by 1e6 for MB/s).
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    public long bytes;
+    public long files;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+        files = 0;
+    }
+}
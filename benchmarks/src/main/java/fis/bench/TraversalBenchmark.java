@@ -0,0 +1,72 @@
+package fis.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+// Listing a tree with metadata, no hashing: the sorted DirectoryStream walker the engine uses,
+// Files.walkFileTree, and the original recursive File.listFiles.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"TINY", "DEEP", "MIXED"})
+    public SyntheticTrees.Shape shape;
+
+    private Path root;
+    private Engine.Task sortedWalk;
+
+    @Setup
+    public void setup() throws Exception {
+        root = SyntheticTrees.original(shape);
+        sortedWalk = Engine.load().sortedWalk(root);
+    }
+
+    @Benchmark
+    public long sortedWalker(Throughput t) throws Exception {
+        long n = sortedWalk.run();
+        t.files += n;
+        return n;
+    }
+
+    @Benchmark
+    public long walkFileTree(Throughput t) throws Exception {
+        long[] n = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) n[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        t.files += n[0];
+        return n[0];
+    }
+
+    @Benchmark
+    public long original(Throughput t) {
+        long n = Baseline.countFiles(root.toFile());
+        t.files += n;
+        return n;
+    }
+}